@@ -10,6 +10,12 @@ public class AlignmentMW {
     private int scoreMismatch;
     private int scoreIndel;
     private int[][] alignmentMatrix;
+    private ScoringMatrix scoring;
+    private byte[] codes1;
+    private byte[] codes2;
+
+    // Matrice identite correspondant aux scores par defaut, partagee par tous les alignements.
+    private static final ScoringMatrix DEFAULT_SCORING = ScoringMatrix.identity(5, -4, -3);
 
     /**
      * Cree une matrice d'alignement d'apres deux sequences et la remplit.
@@ -21,12 +27,53 @@ public class AlignmentMW {
         this.scoreMatch = 5;
         this.scoreMismatch = -4;
         this.scoreIndel = -3;
-        this.s1 = s1.seq;
-        this.s2 = s2.seq;
+        this.s1 = s1.getSeq();
+        this.s2 = s2.getSeq();
+        this.setScoring(DEFAULT_SCORING);
         this.alignmentMatrix = new int[this.s1.length() + 1][this.s2.length() + 1];
         this.fillMatrix();
     }
 
+    /**
+     * Cree un alignement entre deux sequences. En mode lineaire, la matrice d'alignement n'est pas allouee : le score
+     * et la distance sont calcules en ne gardant que deux lignes de la matrice, et l'alignement lui meme est
+     * reconstruit par l'algorithme de Hirschberg, ce qui permet d'aligner de longues sequences en memoire O(n + m).
+     *
+     * @param s1          Premiere sequence pour la matrice
+     * @param s2          Deuxieme sequence pour la matrice
+     * @param linearSpace vrai pour ne pas allouer la matrice d'alignement
+     */
+    public AlignmentMW(Sequence s1, Sequence s2, boolean linearSpace) {
+        this.scoreMatch = 5;
+        this.scoreMismatch = -4;
+        this.scoreIndel = -3;
+        this.s1 = s1.getSeq();
+        this.s2 = s2.getSeq();
+        this.setScoring(DEFAULT_SCORING);
+        if (!linearSpace) {
+            this.alignmentMatrix = new int[this.s1.length() + 1][this.s2.length() + 1];
+            this.fillMatrix();
+        }
+    }
+
+    /**
+     * Cree un alignement en memoire lineaire entre deux sequences, score avec une matrice de substitution :
+     * getAlignmentScore(), getAlignment() et getAlignmentDistance() utilisent alors les scores de la matrice et sa
+     * penalite d'indel au lieu des scores fixes.
+     *
+     * @param s1      Premiere sequence
+     * @param s2      Deuxieme sequence
+     * @param scoring matrice de substitution, par exemple chargee depuis NUC.4.4 ou BLOSUM65
+     */
+    public AlignmentMW(Sequence s1, Sequence s2, ScoringMatrix scoring) {
+        this.scoreMatch = 5;
+        this.scoreMismatch = -4;
+        this.scoreIndel = -3;
+        this.s1 = s1.getSeq();
+        this.s2 = s2.getSeq();
+        this.setScoring(scoring);
+    }
+
     /**
      * Cree une matrice de substitution d'apres un fichier. Fonctionne avec les fichiers NUC.4.4 et BLOSUM65 fournis
      * dans le dossier /data.
@@ -85,6 +132,37 @@ public class AlignmentMW {
         scanner.close();
     }
 
+    /**
+     * Renvoie la matrice de substitution lue par AlignmentMW(File) sous forme de ScoringMatrix.
+     *
+     * @param gap score d'un indel
+     * @return matrice de substitution
+     */
+    public ScoringMatrix getScoringMatrix(int gap) {
+        // s1 contient les residus des colonnes et s2 ceux des lignes, dans l'ordre du fichier.
+        int size = this.s1.length();
+        int[][] matrix = new int[size][size];
+        for (int a = 0; a < size; a++) {
+            int row = this.s2.indexOf(this.s1.charAt(a));
+            if (row < 0) {
+                throw new IllegalStateException("Le residu " + this.s1.charAt(a) + " n'a pas de ligne.");
+            }
+            matrix[a] = this.alignmentMatrix[row].clone();
+        }
+        return new ScoringMatrix(this.s1, matrix, gap);
+    }
+
+    /**
+     * Associe une matrice de substitution a l'alignement et convertit les deux sequences en indices de la matrice.
+     *
+     * @param scoring matrice de substitution
+     */
+    private void setScoring(ScoringMatrix scoring) {
+        this.scoring = scoring;
+        this.codes1 = scoring.encode(this.s1);
+        this.codes2 = scoring.encode(this.s2);
+    }
+
     /**
      * Fonction permettant de remplir la matrice d'alignement d'apres les regles suivantes :
      * https://en.wikipedia.org/wiki/Needleman%E2%80%93Wunsch_algorithm
@@ -123,6 +201,11 @@ public class AlignmentMW {
     public void printMatrix() {
         int spaceSepX = 2;
 
+        if (this.alignmentMatrix == null) {
+            System.out.println("Matrice non conservee (mode lineaire).");
+            return;
+        }
+
         for (int i = 0; i < this.alignmentMatrix.length; i++) {
             System.out.println();
 
@@ -150,6 +233,10 @@ public class AlignmentMW {
         int count = 0;
         int countMax = 0;
 
+        if (this.alignmentMatrix == null) {
+            return this.getScoreLinear();
+        }
+
         for (int i = 1; i <= this.s1.length(); i++) {
             for (int j = 1; j <= this.s2.length(); j++) {
                 if (i == j) {
@@ -168,6 +255,412 @@ public class AlignmentMW {
         return countMax;
     }
 
+    /**
+     * Calcule le meme score que getScore() en remplissant la matrice ligne par ligne avec les regles de fillMatrix(),
+     * sans garder plus de deux lignes.
+     *
+     * @return Le score entre les deux sequences
+     */
+    private int getScoreLinear() {
+        int count = 0;
+        int countMax = 0;
+        int[] previous = new int[this.s2.length() + 1];
+        int[] current = new int[this.s2.length() + 1];
+
+        for (int j = 1; j <= this.s2.length(); j++) {
+            previous[j] = previous[j - 1] + this.scoreIndel;
+        }
+
+        for (int i = 1; i <= this.s1.length(); i++) {
+            current[0] = previous[0] + this.scoreIndel;
+            for (int j = 1; j <= this.s2.length(); j++) {
+                if (i == j) {
+                    if (this.s1.charAt(i - 1) == this.s2.charAt(j - 1)) {
+                        current[j] = previous[j - 1] + this.scoreMatch;
+                    } else {
+                        current[j] = previous[j - 1] + this.scoreMismatch;
+                    }
+
+                    if (current[j] == previous[j - 1] + this.scoreMatch) {
+                        count += 1;
+                        if (count > countMax)
+                            countMax = count;
+                    } else {
+                        count = 0;
+                    }
+                } else if (i < j && this.s1.charAt(i - 1) == this.s2.charAt(j - 1)) {
+                    current[j] = previous[j] + this.scoreIndel;
+                } else {
+                    current[j] = current[j - 1] + this.scoreIndel;
+                }
+            }
+            int[] tmp = previous;
+            previous = current;
+            current = tmp;
+        }
+        return countMax;
+    }
+
+    /**
+     * Calcule le score de l'alignement global de Needleman-Wunsch des deux sequences en ne gardant que deux lignes.
+     *
+     * @return Score de l'alignement optimal
+     */
+    public int getAlignmentScore() {
+        int[] row = new int[this.s2.length() + 1];
+        this.lastRow(0, this.s1.length(), 0, this.s2.length(), false, row);
+        return row[this.s2.length()];
+    }
+
+    /**
+     * Calcule le score de l'alignement global en ne remplissant que les cases proches de la diagonale. La bande
+     * contient toujours les diagonales de (0, 0) et de (n, m), elargies de bandWidth de chaque cote. Avec une largeur
+     * negative, la bande est adaptative : elle est doublee tant qu'un chemin sortant de la bande pourrait faire mieux
+     * que le meilleur chemin trouve dedans, et le score est alors exact.
+     *
+     * @param bandWidth largeur de la bande de chaque cote des diagonales, negative pour une bande adaptative
+     * @return Score du meilleur alignement restant dans la bande
+     */
+    public int getAlignmentScore(int bandWidth) {
+        return this.bandedScore(bandWidth, Integer.MIN_VALUE);
+    }
+
+    /**
+     * Calcule la distance entre les deux sequences d'apres le score de l'alignement global, normalise comme
+     * getDistance() par les scores maximal et minimal.
+     *
+     * @return la distance entre les deux sequences
+     */
+    public double getAlignmentDistance() {
+        return (this.getAlignmentScoreMax() - this.getAlignmentScore())
+                / (double) (this.getAlignmentScoreMax() - this.getAlignmentScoreMin());
+    }
+
+    /**
+     * Calcule la distance de getAlignmentDistance() sur un alignement en bande, en s'arretant des que la distance ne
+     * peut plus etre inferieure ou egale au seuil. Dans ce cas, la valeur renvoyee est une borne inferieure de la
+     * distance, superieure au seuil, ce qui suffit pour ecarter la paire lors d'une clusterisation.
+     *
+     * @param bandWidth largeur de la bande de chaque cote des diagonales, negative pour une bande adaptative
+     * @param cutoff    seuil de distance au dela duquel le calcul est abandonne
+     * @return la distance entre les deux sequences, ou une borne inferieure superieure au seuil
+     */
+    public double getAlignmentDistance(int bandWidth, double cutoff) {
+        int scoreMax = this.getAlignmentScoreMax();
+        int scoreMin = this.getAlignmentScoreMin();
+        int needed = Integer.MIN_VALUE;
+        if (cutoff < 1) {
+            needed = (int) Math.ceil(scoreMax - cutoff * (scoreMax - scoreMin));
+        }
+        return (scoreMax - this.bandedScore(bandWidth, needed)) / (double) (scoreMax - scoreMin);
+    }
+
+    /**
+     * Score maximal d'un alignement global : le plus petit des scores de l'alignement de chaque sequence avec
+     * elle meme. Avec les scores par defaut, c'est getScoreMax().
+     *
+     * @return Score maximal de l'alignement
+     */
+    private int getAlignmentScoreMax() {
+        int[] scores = this.scoring.getScores();
+        int size = this.scoring.size();
+        int self1 = 0;
+        int self2 = 0;
+
+        for (byte c : this.codes1) {
+            self1 += scores[(c & 0xFF) * size + (c & 0xFF)];
+        }
+        for (byte c : this.codes2) {
+            self2 += scores[(c & 0xFF) * size + (c & 0xFF)];
+        }
+        return Math.min(self1, self2);
+    }
+
+    /**
+     * Score minimal d'un alignement global, ou toutes les positions sont des indels. Avec les scores par defaut,
+     * c'est getScoreMin().
+     *
+     * @return Score minimal de l'alignement
+     */
+    private int getAlignmentScoreMin() {
+        return this.scoring.getGap() * (this.s1.length() + this.s2.length());
+    }
+
+    /**
+     * Calcule le score en bande, fixe ou adaptative, avec abandon sous le score needed.
+     *
+     * @param bandWidth largeur de la bande, negative pour une bande adaptative
+     * @param needed    score en dessous duquel le calcul peut etre abandonne
+     * @return le score, ou un majorant du score inferieur a needed si le calcul a ete abandonne
+     */
+    private int bandedScore(int bandWidth, int needed) {
+        if (bandWidth >= 0) {
+            return this.bandedScore(bandWidth, needed, this.s1.length() + this.s2.length());
+        }
+
+        int width = 8;
+        while (true) {
+            int score = this.bandedScore(width, needed, this.s1.length() + this.s2.length());
+            int outOfBand = this.outOfBandScore(width);
+            if (score >= outOfBand) {
+                return score;
+            }
+            if (score < needed) {
+                // Les chemins dans la bande comme hors de la bande restent sous needed : la paire est deja ecartee.
+                if (outOfBand < needed) {
+                    return Math.max(score, outOfBand);
+                }
+                // Sinon, inutile de remplir les bandes intermediaires : on passe directement a la premiere largeur
+                // dont les chemins sortants restent sous needed.
+                while (this.outOfBandScore(width) >= needed) {
+                    width *= 2;
+                }
+            } else {
+                width *= 2;
+            }
+        }
+    }
+
+    /**
+     * Majore le score des chemins sortant de la bande de largeur width : un tel chemin fait au moins
+     * |n - m| + 2 (width + 1) indels, le reste des positions etant au mieux des correspondances parfaites.
+     *
+     * @param width largeur de la bande de chaque cote des diagonales
+     * @return majorant du score hors de la bande, Integer.MIN_VALUE si la bande couvre toute la matrice
+     */
+    private int outOfBandScore(int width) {
+        int indels = Math.abs(this.s1.length() - this.s2.length()) + 2 * (width + 1);
+        int diagonals = (this.s1.length() + this.s2.length() - indels) / 2;
+        if (diagonals < 0) {
+            return Integer.MIN_VALUE;
+        }
+        return this.scoring.getMaxScore() * diagonals + this.scoring.getGap() * indels;
+    }
+
+    /**
+     * Remplit la bande de largeur width ligne par ligne en ne gardant que deux lignes. Apres chaque ligne, on majore
+     * le score final en supposant que tout le reste des sequences s'aligne parfaitement ; si ce majorant est inferieur
+     * a needed, on s'arrete.
+     *
+     * @param width  largeur de la bande de chaque cote des diagonales
+     * @param needed score en dessous duquel le calcul peut etre abandonne
+     * @param limit  largeur au dela de laquelle la bande couvre toute la matrice
+     * @return le score, ou un majorant du score inferieur a needed si le calcul a ete abandonne
+     */
+    private int bandedScore(int width, int needed, int limit) {
+        final int minusInfinity = Integer.MIN_VALUE / 2;
+        int n = this.s1.length();
+        int m = this.s2.length();
+        width = Math.min(width, limit);
+        int low = Math.min(0, m - n) - width;
+        int high = Math.max(0, m - n) + width;
+        int[] scores = this.scoring.getScores();
+        int size = this.scoring.size();
+        int gap = this.scoring.getGap();
+        int maxScore = this.scoring.getMaxScore();
+        int[] previous = new int[m + 1];
+        int[] current = new int[m + 1];
+
+        for (int j = 0; j <= Math.min(m, high); j++) {
+            previous[j] = j * gap;
+        }
+
+        for (int i = 1; i <= n; i++) {
+            int from = Math.max(0, i + low);
+            int to = Math.min(m, i + high);
+            int bound = minusInfinity;
+            int row = (this.codes1[i - 1] & 0xFF) * size;
+
+            for (int j = from; j <= to; j++) {
+                int best;
+                if (j == 0) {
+                    best = i * gap;
+                } else {
+                    best = previous[j - 1] + scores[row + (this.codes2[j - 1] & 0xFF)];
+                    if (j - i + 1 <= high) {
+                        best = Math.max(best, previous[j] + gap);
+                    }
+                    if (j > from) {
+                        best = Math.max(best, current[j - 1] + gap);
+                    }
+                }
+                current[j] = best;
+
+                int rest1 = n - i;
+                int rest2 = m - j;
+                bound = Math.max(bound, best + maxScore * Math.min(rest1, rest2) + gap * Math.abs(rest1 - rest2));
+            }
+
+            if (bound < needed) {
+                return bound;
+            }
+
+            int[] tmp = previous;
+            previous = current;
+            current = tmp;
+        }
+        return previous[m];
+    }
+
+    /**
+     * Construit l'alignement global optimal des deux sequences par l'algorithme de Hirschberg : on coupe la premiere
+     * sequence en deux, on cherche ou couper la deuxieme d'apres les scores des deux moities calcules sur deux lignes,
+     * puis on aligne les deux moities separement. La memoire utilisee est en O(n + m).
+     *
+     * @return tableau de deux chaines de meme longueur, les deux sequences alignees avec des '-' pour les indels
+     */
+    public String[] getAlignment() {
+        StringBuilder aligned1 = new StringBuilder();
+        StringBuilder aligned2 = new StringBuilder();
+        this.hirschberg(0, this.s1.length(), 0, this.s2.length(), aligned1, aligned2);
+        return new String[]{aligned1.toString(), aligned2.toString()};
+    }
+
+    /**
+     * Calcule la derniere ligne de la matrice de Needleman-Wunsch alignant s1[from1, to1[ avec les prefixes de
+     * s2[from2, to2[, ou des suffixes si reverse est vrai.
+     *
+     * @param from1   debut de la portion de s1
+     * @param to1     fin de la portion de s1
+     * @param from2   debut de la portion de s2
+     * @param to2     fin de la portion de s2
+     * @param reverse vrai pour parcourir les deux portions a l'envers
+     * @param row     tableau d'au moins to2 - from2 + 1 cases recevant la derniere ligne
+     */
+    private void lastRow(int from1, int to1, int from2, int to2, boolean reverse, int[] row) {
+        int len2 = to2 - from2;
+        int[] scores = this.scoring.getScores();
+        int size = this.scoring.size();
+        int gap = this.scoring.getGap();
+
+        row[0] = 0;
+        for (int j = 1; j <= len2; j++) {
+            row[j] = row[j - 1] + gap;
+        }
+
+        for (int i = 1; i <= to1 - from1; i++) {
+            int line = (reverse ? this.codes1[to1 - i] & 0xFF : this.codes1[from1 + i - 1] & 0xFF) * size;
+            int diagonal = row[0];
+            row[0] += gap;
+            for (int j = 1; j <= len2; j++) {
+                int c2 = reverse ? this.codes2[to2 - j] & 0xFF : this.codes2[from2 + j - 1] & 0xFF;
+                int best = diagonal + scores[line + c2];
+                best = Math.max(best, row[j] + gap);
+                best = Math.max(best, row[j - 1] + gap);
+                diagonal = row[j];
+                row[j] = best;
+            }
+        }
+    }
+
+    /**
+     * Aligne s1[from1, to1[ avec s2[from2, to2[ et ajoute le resultat a aligned1 et aligned2.
+     *
+     * @param from1    debut de la portion de s1
+     * @param to1      fin de la portion de s1
+     * @param from2    debut de la portion de s2
+     * @param to2      fin de la portion de s2
+     * @param aligned1 premiere sequence alignee
+     * @param aligned2 deuxieme sequence alignee
+     */
+    private void hirschberg(int from1, int to1, int from2, int to2, StringBuilder aligned1, StringBuilder aligned2) {
+        if (to1 - from1 <= 1 || to2 - from2 <= 1) {
+            this.alignSmall(from1, to1, from2, to2, aligned1, aligned2);
+            return;
+        }
+
+        int middle = (from1 + to1) / 2;
+        int len2 = to2 - from2;
+        int[] forward = new int[len2 + 1];
+        int[] backward = new int[len2 + 1];
+        this.lastRow(from1, middle, from2, to2, false, forward);
+        this.lastRow(middle, to1, from2, to2, true, backward);
+
+        // On coupe s2 la ou la somme des scores des deux moities est maximale.
+        int cut = 0;
+        int best = Integer.MIN_VALUE;
+        for (int k = 0; k <= len2; k++) {
+            int score = forward[k] + backward[len2 - k];
+            if (score > best) {
+                best = score;
+                cut = k;
+            }
+        }
+
+        this.hirschberg(from1, middle, from2, from2 + cut, aligned1, aligned2);
+        this.hirschberg(middle, to1, from2 + cut, to2, aligned1, aligned2);
+    }
+
+    /**
+     * Renvoie le score de la substitution du residu i de s1 par le residu j de s2.
+     *
+     * @param i position dans s1
+     * @param j position dans s2
+     * @return score de la matrice de substitution
+     */
+    private int substitution(int i, int j) {
+        return this.scoring.getScores()[(this.codes1[i] & 0xFF) * this.scoring.size() + (this.codes2[j] & 0xFF)];
+    }
+
+    /**
+     * Aligne deux portions dont l'une fait au plus un caractere avec une matrice complete, qui ne fait alors que
+     * O(n + m) cases.
+     *
+     * @param from1    debut de la portion de s1
+     * @param to1      fin de la portion de s1
+     * @param from2    debut de la portion de s2
+     * @param to2      fin de la portion de s2
+     * @param aligned1 premiere sequence alignee
+     * @param aligned2 deuxieme sequence alignee
+     */
+    private void alignSmall(int from1, int to1, int from2, int to2, StringBuilder aligned1, StringBuilder aligned2) {
+        int len1 = to1 - from1;
+        int len2 = to2 - from2;
+        int gap = this.scoring.getGap();
+        int[][] matrix = new int[len1 + 1][len2 + 1];
+
+        for (int i = 1; i <= len1; i++) {
+            matrix[i][0] = matrix[i - 1][0] + gap;
+        }
+        for (int j = 1; j <= len2; j++) {
+            matrix[0][j] = matrix[0][j - 1] + gap;
+        }
+        for (int i = 1; i <= len1; i++) {
+            for (int j = 1; j <= len2; j++) {
+                matrix[i][j] = Math.max(matrix[i - 1][j - 1] + this.substitution(from1 + i - 1, from2 + j - 1),
+                        Math.max(matrix[i - 1][j], matrix[i][j - 1]) + gap);
+            }
+        }
+
+        // Remontee depuis la derniere case, les caracteres sont ajoutes a l'envers.
+        StringBuilder reversed1 = new StringBuilder();
+        StringBuilder reversed2 = new StringBuilder();
+        int i = len1;
+        int j = len2;
+        while (i > 0 || j > 0) {
+            if (i > 0 && j > 0) {
+                if (matrix[i][j] == matrix[i - 1][j - 1] + this.substitution(from1 + i - 1, from2 + j - 1)) {
+                    reversed1.append(this.s1.charAt(from1 + i - 1));
+                    reversed2.append(this.s2.charAt(from2 + j - 1));
+                    i--;
+                    j--;
+                    continue;
+                }
+            }
+            if (i > 0 && matrix[i][j] == matrix[i - 1][j] + gap) {
+                reversed1.append(this.s1.charAt(from1 + i - 1));
+                reversed2.append('-');
+                i--;
+            } else {
+                reversed1.append('-');
+                reversed2.append(this.s2.charAt(from2 + j - 1));
+                j--;
+            }
+        }
+        aligned1.append(reversed1.reverse());
+        aligned2.append(reversed2.reverse());
+    }
+
     /**
      * Permet de calculer le score maximum de l'alignement tel que fixe par le sujet.
      *
@@ -230,6 +723,17 @@ public class AlignmentMW {
         System.out.println("l'alignement est :" + seq13.getDistance());
         System.out.println("l'alignement est :" + seq23.getDistance());
 
+        AlignmentMW seq12Linear = new AlignmentMW(seq1, seq2, true);
+        String[] alignment = seq12Linear.getAlignment();
+        System.out.println("l'alignement en mode lineaire est :" + seq12Linear.getDistance());
+        System.out.println("Alignement de Hirschberg (score " + seq12Linear.getAlignmentScore() + ") :");
+        System.out.println(alignment[0]);
+        System.out.println(alignment[1]);
+
+        System.out.println("Distance d'alignement seq1 et 3 : " + seq13.getAlignmentDistance());
+        System.out.println("Distance en bande adaptative seq1 et 3 : " + seq13.getAlignmentDistance(-1, 1));
+        System.out.println("Distance en bande avec seuil 0.1 seq1 et 3 : " + seq13.getAlignmentDistance(1, 0.1));
+
         System.out.println("GetScoreMin seq1 et 2 : " + seq12.getScoreMin());
         System.out.println("GetScoreMax seq1 et 2 : " + seq12.getScoreMax());
     }
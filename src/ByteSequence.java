@@ -0,0 +1,107 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sequence stockee sous forme de byte[] (un octet par residu, ISO-8859-1), adaptee aux proteines comme aux
+ * nucleotides. La comparaison de deux ByteSequence passe par un MismatchCounter vectoriel lorsqu'il est disponible.
+ */
+public class ByteSequence extends Sequence {
+
+	private static final MismatchCounter COUNTER = MismatchCounter.best();
+
+	private byte[] residues;
+
+	/**
+	 * Constructeur d'apres une sequence sous forme de string.
+	 * @param s sequence, dont les caracteres doivent etre inferieurs a 256
+	 */
+	public ByteSequence(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			if (s.charAt(i) > 0xFF) {
+				throw new IllegalArgumentException("Caractere non representable sur un octet a la position " + i);
+			}
+		}
+		this.residues = s.getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Constructeur d'apres un tableau d'octets, qui n'est pas copie.
+	 * @param residues sequence, un octet par residu
+	 */
+	public ByteSequence(byte[] residues) {
+		this.residues = residues;
+	}
+
+	/**
+	 * Constructeur d'apres une autre instance de Sequence.
+	 * @param s Sequence
+	 */
+	public ByteSequence(Sequence s) {
+		this(s.getSeq());
+	}
+
+	/**
+	 * Renvoie le nombre de residus de la sequence.
+	 * @return longueur de la sequence
+	 */
+	public int length() {
+		return this.residues.length;
+	}
+
+	/**
+	 * Renvoie le tableau d'octets de la sequence, sans le copier.
+	 * @return residus
+	 */
+	public byte[] getBytes() {
+		return this.residues;
+	}
+
+	/**
+	 * Get la sequence sous forme de string. La string n'est pas conservee.
+	 * @return sequence
+	 */
+	@Override
+	public String getSeq() {
+		return new String(this.residues, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Retourne la sequence sous forme de string.
+	 * @return seq
+	 */
+	@Override
+	public String toString() {
+		return this.getSeq();
+	}
+
+	/**
+	 * Calcule la meme distance que Sequence.distance(), en comparant les octets avec le noyau MismatchCounter lorsque
+	 * l'autre sequence est aussi une ByteSequence.
+	 * @param otherSeq Sequence avec laquelle on calcule la distance.
+	 * @return double correspondant a la distance entre les sequences.
+	 */
+	@Override
+	public double distance(Sequence otherSeq) {
+		if (!(otherSeq instanceof ByteSequence)) {
+			return super.distance(otherSeq);
+		}
+		byte[] s = ((ByteSequence) otherSeq).residues;
+
+		int length = Math.min(s.length, this.residues.length);
+		int sum = COUNTER.count(this.residues, s, length);
+
+		sum += Math.abs(this.residues.length-s.length);
+
+		double a = (double)sum/(double)length;
+		return a;
+	}
+
+	public static void main(String[] args) {
+		System.out.println("Noyau utilise : " + (COUNTER == MismatchCounter.SCALAR ? "scalaire" : "vectoriel"));
+
+		String s1 = "MVLSPADKTNVKAAWGKVGAHAGEYGAEALERMFLSFPTTKTYFPHFDLSHGSAQVKGHGKKVADALTNAVAHVDDMPNALSALSDLHAHKLRVDPVNFKLLSHCLLVTLAAHLPAEFTPAVHASLDKFLASVSTVLTSKYR";
+		String s2 = "MVLSGEDKSNIKAAWGKIGGHGAEYGAEALERMFASFPTTKTYFPHFDVSHGSAQVKGHGKKVADALANAAGHLDDLPGALSALSDLHAHKLRVDPVNFKLLSHCLLVTLASHHPADFTPAVHASLDKFLASVSTVLTSKY";
+
+		System.out.println("dist(s1,s2) ByteSequence : " + new ByteSequence(s1).distance(new ByteSequence(s2)));
+		System.out.println("dist(s1,s2) Sequence : " + new Sequence(s1).distance(new Sequence(s2)));
+	}
+}
@@ -0,0 +1,327 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Clusterisation approchee en deux etapes pour les tres grands jeux de sequences. On regroupe d'abord les sequences
+ * en canopees avec une distance peu couteuse (esquisse MinHash, profil de k-mers...) : chaque sequence encore libre
+ * devient le centre d'une canopee, les sequences a moins du seuil large du centre peuvent y etre rangees, et celles a
+ * moins du seuil serre ne peuvent plus devenir centres. Chaque sequence est rangee dans la canopee du centre le plus
+ * proche. On clusterise ensuite chaque canopee au lien moyen avec la chaine des plus proches voisins, en parallele,
+ * puis on relie les canopees par la clusterisation de leurs centres. Seules les distances a l'interieur des canopees
+ * et entre centres sont exactes. Deux centres pouvant etre plus proches que la hauteur de l'arbre d'une canopee, la
+ * hauteur d'une fusion entre canopees est relevee a celle de ses fils, pour que le dendrogramme reste monotone.
+ * Une canopee, ou l'ensemble des centres, trop grand pour une matrice sur le tas est clusterise sur une
+ * MappedDistanceMatrix rangee dans un fichier temporaire.
+ */
+public class CanopyClustering {
+
+    /**
+     * Taille a partir de laquelle la matrice d'une canopee est remplie par DistanceMatrixBuilder sur tous les threads,
+     * plutot que dans un seul thread en parallele avec les autres canopees.
+     */
+    public static final int PARALLEL_CANOPY_SIZE = 1024;
+
+    private DistanceFunction cheap;
+    private DistanceFunction exact;
+    private double loose;
+    private double tight;
+    private int nbThreads;
+
+    /**
+     * Construit une clusterisation par canopees utilisant Sequence.distance() dans les canopees et entre les centres.
+     *
+     * @param cheap     distance peu couteuse utilisee pour former les canopees
+     * @param loose     seuil large : distance maximale d'une sequence au centre de sa canopee
+     * @param tight     seuil serre, au plus egal au seuil large : en dessous, une sequence ne peut plus etre centre
+     * @param nbThreads nombre de threads
+     */
+    public CanopyClustering(DistanceFunction cheap, double loose, double tight, int nbThreads) {
+        this(cheap, DistanceFunction.SEQUENCE, loose, tight, nbThreads);
+    }
+
+    /**
+     * Construit une clusterisation par canopees.
+     *
+     * @param cheap     distance peu couteuse utilisee pour former les canopees
+     * @param exact     distance utilisee dans les canopees et entre les centres
+     * @param loose     seuil large : distance maximale d'une sequence au centre de sa canopee
+     * @param tight     seuil serre, au plus egal au seuil large : en dessous, une sequence ne peut plus etre centre
+     * @param nbThreads nombre de threads
+     */
+    public CanopyClustering(DistanceFunction cheap, DistanceFunction exact, double loose, double tight,
+                            int nbThreads) {
+        if (tight > loose) {
+            throw new IllegalArgumentException("Le seuil serre ne peut pas depasser le seuil large.");
+        }
+        if (nbThreads < 1) {
+            throw new IllegalArgumentException("Le nombre de threads doit etre positif.");
+        }
+        this.cheap = cheap;
+        this.exact = exact;
+        this.loose = loose;
+        this.tight = tight;
+        this.nbThreads = nbThreads;
+    }
+
+    /**
+     * Regroupe les sequences en canopees disjointes.
+     *
+     * @param elements sequences
+     * @return canopees, le centre de chacune en premier
+     */
+    public ArrayList<ArrayList<Sequence>> canopies(List<? extends Sequence> elements) {
+        ArrayList<ArrayList<Sequence>> canopies = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(this.nbThreads);
+        try {
+            for (int[] members : this.canopyMembers(elements, pool)) {
+                ArrayList<Sequence> canopy = new ArrayList<>(members.length);
+                for (int m : members) {
+                    canopy.add(elements.get(m));
+                }
+                canopies.add(canopy);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return canopies;
+    }
+
+    /**
+     * Clusterise les sequences. Les feuilles du dendrogramme sont les sequences dans l'ordre de la liste ; les fusions
+     * de chaque canopee precedent celles qui relient les canopees.
+     *
+     * @param elements sequences
+     * @return dendrogramme complet
+     */
+    public Dendrogram clusterize(List<? extends Sequence> elements) {
+        Dendrogram dendrogram = new Dendrogram(elements);
+        if (elements.isEmpty()) {
+            return dendrogram;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(this.nbThreads);
+        try {
+            List<int[]> canopies = this.canopyMembers(elements, pool);
+            Dendrogram[] locals = new Dendrogram[canopies.size()];
+            // Les petites canopees sont clusterisees en parallele, chacune dans un thread ; les grandes l'une apres
+            // l'autre, chacune sur tous les threads.
+            pool.submit(() -> IntStream.range(0, locals.length).parallel().forEach(c -> {
+                if (canopies.get(c).length < PARALLEL_CANOPY_SIZE) {
+                    List<Sequence> members = this.sequences(elements, canopies.get(c));
+                    locals[c] = Dendrogram.clusterizeNNChain(members, this.matrix(members), Linkage.AVERAGE);
+                }
+            })).join();
+            for (int c = 0; c < locals.length; c++) {
+                if (locals[c] == null) {
+                    locals[c] = this.clusterizeAverage(this.sequences(elements, canopies.get(c)));
+                }
+            }
+
+            // On recopie les fusions de chaque canopee, les feuilles locales devenant les sequences de la liste.
+            ArrayList<Sequence> centers = new ArrayList<>(locals.length);
+            int[] roots = new int[locals.length];
+            for (int c = 0; c < locals.length; c++) {
+                int[] members = canopies.get(c);
+                centers.add(elements.get(members[0]));
+                roots[c] = this.copy(locals[c], members, dendrogram);
+            }
+
+            this.copy(this.clusterizeAverage(centers), roots, dendrogram);
+        } finally {
+            pool.shutdown();
+        }
+        return dendrogram;
+    }
+
+    /**
+     * Forme les canopees. Les centres sont choisis dans l'ordre de la liste ; les distances d'un centre aux sequences
+     * suivantes sont calculees en parallele.
+     *
+     * @param elements sequences
+     * @param pool     pool de threads
+     * @return indices des sequences de chaque canopee, le centre en premier
+     */
+    private List<int[]> canopyMembers(List<? extends Sequence> elements, ForkJoinPool pool) {
+        int n = elements.size();
+        // Une sequence retiree est a moins du seuil serre d'un centre et ne peut plus devenir centre.
+        boolean[] removed = new boolean[n];
+        int[] owner = new int[n];
+        double[] ownerDistance = new double[n];
+        ArrayList<Integer> centers = new ArrayList<>();
+        Arrays.fill(ownerDistance, Double.POSITIVE_INFINITY);
+
+        for (int i = 0; i < n; i++) {
+            if (removed[i]) {
+                continue;
+            }
+            int canopy = centers.size();
+            int center = i;
+            centers.add(center);
+            owner[center] = canopy;
+            ownerDistance[center] = 0;
+            Sequence s = elements.get(center);
+            pool.submit(() -> IntStream.range(center + 1, n).parallel().forEach(j -> {
+                if (!removed[j]) {
+                    double d = this.cheap.distance(s, elements.get(j));
+                    if (d <= this.loose && d < ownerDistance[j]) {
+                        owner[j] = canopy;
+                        ownerDistance[j] = d;
+                    }
+                    if (d <= this.tight) {
+                        removed[j] = true;
+                    }
+                }
+            })).join();
+        }
+
+        int[] sizes = new int[centers.size()];
+        for (int i = 0; i < n; i++) {
+            sizes[owner[i]]++;
+        }
+        ArrayList<int[]> canopies = new ArrayList<>(centers.size());
+        for (int c = 0; c < centers.size(); c++) {
+            int[] members = new int[sizes[c]];
+            members[0] = centers.get(c);
+            canopies.add(members);
+            sizes[c] = 1;
+        }
+        for (int i = 0; i < n; i++) {
+            int c = owner[i];
+            if (i != centers.get(c)) {
+                canopies.get(c)[sizes[c]++] = i;
+            }
+        }
+        return canopies;
+    }
+
+    /**
+     * Recopie les fusions d'un dendrogramme dans un autre. Une fusion plus basse que l'un de ses fils dans la
+     * destination est placee a la hauteur de ce fils.
+     *
+     * @param source dendrogramme a recopier
+     * @param leaves noeud de la destination correspondant a chaque feuille de la source
+     * @param target dendrogramme de destination
+     * @return noeud de la destination correspondant a la racine de la source
+     */
+    private int copy(Dendrogram source, int[] leaves, Dendrogram target) {
+        int n = source.getLeafCount();
+        int[] nodes = Arrays.copyOf(leaves, source.getNodeCount());
+        for (int node = n; node < source.getNodeCount(); node++) {
+            int a = nodes[source.getLeft(node)];
+            int b = nodes[source.getRight(node)];
+            double height = Math.max(source.getHeight(node), Math.max(target.getHeight(a), target.getHeight(b)));
+            nodes[node] = target.merge(a, b, height);
+        }
+        return nodes[nodes.length - 1];
+    }
+
+    /**
+     * Renvoie les sequences d'une canopee.
+     *
+     * @param elements sequences
+     * @param members  indices des sequences de la canopee
+     * @return sequences de la canopee
+     */
+    private List<Sequence> sequences(List<? extends Sequence> elements, int[] members) {
+        ArrayList<Sequence> list = new ArrayList<>(members.length);
+        for (int m : members) {
+            list.add(elements.get(m));
+        }
+        return list;
+    }
+
+    /**
+     * Clusterise des sequences au lien moyen avec la chaine des plus proches voisins, la matrice des distances exactes
+     * etant remplie en parallele. Au dela de la taille d'une matrice sur le tas, la matrice est projetee depuis un
+     * fichier temporaire, supprime ensuite.
+     *
+     * @param members sequences
+     * @return dendrogramme complet
+     * @throws UncheckedIOException si le fichier temporaire ne peut pas etre cree ou projete
+     */
+    private Dendrogram clusterizeAverage(List<Sequence> members) {
+        DistanceMatrixBuilder builder = new DistanceMatrixBuilder(this.exact, this.nbThreads);
+        if (DistanceMatrix.fitsOnHeap(members.size())) {
+            return Dendrogram.clusterizeNNChain(members, builder.build(members), Linkage.AVERAGE);
+        }
+        File path = null;
+        try {
+            path = File.createTempFile("canopy", ".bin");
+            try (MappedDistanceMatrix matrix = new MappedDistanceMatrix(path, members.size(),
+                    MappedDistanceMatrix.Precision.FLOAT32)) {
+                builder.fill(members, matrix);
+                return Dendrogram.clusterizeNNChain(members, matrix, Linkage.AVERAGE);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (path != null && !path.delete()) {
+                path.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Calcule la matrice des distances exactes entre les sequences d'une canopee, dans le thread courant.
+     *
+     * @param members sequences de la canopee
+     * @return matrice des distances
+     */
+    private DistanceMatrix matrix(List<Sequence> members) {
+        DistanceMatrix matrix = new DistanceMatrix(members.size());
+        for (int i = 0; i < members.size(); i++) {
+            for (int j = i + 1; j < members.size(); j++) {
+                matrix.set(i, j, this.exact.distance(members.get(i), members.get(j)));
+            }
+        }
+        return matrix;
+    }
+
+    public static void main(String[] args) {
+        // 40 familles de 50 lectures, chaque lecture differant de l'ancetre de sa famille sur 2 % des bases.
+        Random random = new Random(42);
+        ArrayList<Sequence> reads = new ArrayList<>();
+        for (int f = 0; f < 40; f++) {
+            StringBuilder ancestor = new StringBuilder();
+            for (int i = 0; i < 150; i++) {
+                ancestor.append("ACGT".charAt(random.nextInt(4)));
+            }
+            for (int r = 0; r < 50; r++) {
+                StringBuilder read = new StringBuilder(ancestor);
+                for (int i = 0; i < 3; i++) {
+                    read.setCharAt(random.nextInt(read.length()), "ACGT".charAt(random.nextInt(4)));
+                }
+                reads.add(new Sequence(read.toString()));
+            }
+        }
+        Collections.shuffle(reads, random);
+
+        int nbThreads = Runtime.getRuntime().availableProcessors();
+        CanopyClustering canopy = new CanopyClustering(DistanceFunction.minHash(11, 64), 0.2, 0.1, nbThreads);
+        double t = System.nanoTime();
+        ArrayList<ArrayList<Sequence>> canopies = canopy.canopies(reads);
+        double t2 = System.nanoTime();
+        System.out.println(canopies.size() + " canopees pour " + reads.size() + " lectures en " + (t2 - t) / 1e6
+                + " ms");
+
+        t = System.nanoTime();
+        ClusterOfSequences cluster = new ClusterOfSequences(reads);
+        cluster.clusterizeCanopy(canopy);
+        t2 = System.nanoTime();
+        System.out.println("Clusterisation par canopees : " + (t2 - t) / 1e6 + " ms");
+
+        t = System.nanoTime();
+        ClusterOfSequences exact = new ClusterOfSequences(reads);
+        exact.clusterizeMatrix(DistanceFunction.SEQUENCE, nbThreads);
+        t2 = System.nanoTime();
+        System.out.println("Clusterisation exacte : " + (t2 - t) / 1e6 + " ms");
+    }
+}
@@ -1,9 +1,31 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class ClusterOfSequences {
 
+    /**
+     * Taille en dessous de laquelle un cluster est divise sequentiellement par clusterizeDivisive(nbThreads).
+     */
+    public static final int DIVISIVE_SEQUENTIAL_THRESHOLD = 256;
+
+    /**
+     * Nombre de sequences du resume d'un cluster, auxquelles une sequence inseree par insert() est comparee.
+     */
+    public static final int SUMMARY_SIZE = 8;
+
     private ArrayList<ClusterOfSequences> subClusters;
-    private ArrayList<Sequence> elements;
+    private List<Sequence> elements;
+    // Vrai si elements est partage, avec l'appelant ou avec un dendrogramme : a copier avant d'y ajouter une sequence.
+    private boolean sharedElements;
+    // Distance a laquelle les sous clusters ont ete fusionnes : 0 pour une feuille, NaN si elle n'est pas connue.
+    private double height;
+    // Sequences representant le cluster pour insert(), choisies a la premiere insertion puis gardees.
+    private ArrayList<Sequence> summary;
 
     /**
      * Construit un cluster a partir d'une sequence.
@@ -14,6 +36,7 @@ public class ClusterOfSequences {
         this.subClusters = new ArrayList<>();
         this.elements = new ArrayList<>();
         this.elements.add(element);
+        this.height = 0;
     }
 
     /**
@@ -24,6 +47,8 @@ public class ClusterOfSequences {
     public ClusterOfSequences(ArrayList<Sequence> eltList) {
         this.subClusters = new ArrayList<>();
         this.elements = eltList;
+        this.sharedElements = true;
+        this.height = Double.NaN;
     }
 
     /**
@@ -33,46 +58,122 @@ public class ClusterOfSequences {
      * @param cluster2 Cluster a ajouter aux sous clusters
      */
     public ClusterOfSequences(ClusterOfSequences cluster1, ClusterOfSequences cluster2) {
+        this(cluster1, cluster2, Double.NaN);
+    }
+
+    /**
+     * Construit un cluster a partir de deux autres clusters fusionnes a la distance height.
+     *
+     * @param cluster1 Cluster a ajouter aux sous clusters
+     * @param cluster2 Cluster a ajouter aux sous clusters
+     * @param height   distance de fusion des deux clusters
+     */
+    public ClusterOfSequences(ClusterOfSequences cluster1, ClusterOfSequences cluster2, double height) {
+        this(cluster1, cluster2, height, new ArrayList<>());
+        this.elements.addAll(cluster1.elements);
+        this.elements.addAll(cluster2.elements);
+    }
+
+    /**
+     * Construit un cluster a partir de deux autres clusters fusionnes a la distance height, sans copier leurs
+     * sequences.
+     *
+     * @param cluster1 Cluster a ajouter aux sous clusters
+     * @param cluster2 Cluster a ajouter aux sous clusters
+     * @param height   distance de fusion des deux clusters
+     * @param elements sequences du cluster
+     */
+    private ClusterOfSequences(ClusterOfSequences cluster1, ClusterOfSequences cluster2, double height,
+                               List<Sequence> elements) {
         this.subClusters = new ArrayList<>();
-        this.elements = new ArrayList<>();
+        this.elements = elements;
         this.subClusters.add(cluster1);
         this.subClusters.add(cluster2);
-        this.elements.addAll(cluster1.elements);
-        this.elements.addAll(cluster2.elements);
+        this.height = height;
     }
 
     /**
-     * Fonction recursive permettant la construction de la chaine au format Newick.
+     * Construit le cluster clusterise correspondant a un dendrogramme : ses sous clusters sont les deux fils de la
+     * racine, et getNewick() donne la meme sortie que si le cluster avait ete clusterise directement.
      *
-     * @return String au format Newick.
+     * @param dendrogram dendrogramme
      */
-    private String getNewickIntermediate() {
-        String newick = "";
+    public ClusterOfSequences(Dendrogram dendrogram) {
+        this(new ArrayList<>());
+        for (int i = 0; i < dendrogram.getLeafCount(); i++) {
+            this.elements.add(dendrogram.getLeaf(i));
+        }
+        this.setTree(dendrogram);
+    }
 
-        // S'il y a des sous clusters, on rappelle la fonction sur ces sous clusters tout en construisant la chaine.
-        if (!this.subClusters.isEmpty()) {
-            newick += "(";
-            for (int i = 0; i < this.subClusters.size(); i++) {
-                newick += this.subClusters.get(i).getNewickIntermediate();
-                if (i == 0 && !this.subClusters.get(i).elements.isEmpty()) {
-                    newick += ",";
-                }
+    /**
+     * Ajoute aux sous clusters ceux d'un dendrogramme. Les fils d'un noeud etant toujours numerotes avant lui,
+     * on construit les clusters par numero croissant, sans recursion. Un dendrogramme complet n'a qu'une racine, dont
+     * les deux fils deviennent les sous clusters, comme a la fin de clusterize(). Les sequences d'un noeud ne sont pas
+     * copiees : le dendrogramme reste le stockage de l'arbre et chaque cluster n'en garde qu'une vue, ce qui rend la
+     * construction lineaire au lieu de quadratique pour un arbre desequilibre.
+     *
+     * @param dendrogram dendrogramme construit sur les sequences du cluster
+     */
+    private void setTree(Dendrogram dendrogram) {
+        int n = dendrogram.getLeafCount();
+        int[] roots = dendrogram.getRoots();
+        boolean unfold = roots.length == 1 && !dendrogram.isLeaf(roots[0]);
+        this.subClusters.clear();
+        this.summary = null;
+        // Les sequences du cluster sont les feuilles du dendrogramme : les modifier decalerait ses numeros de noeud.
+        this.sharedElements = true;
+        // La racine depliee n'est pas construite : ses sequences sont deja celles du cluster.
+        int nbNodes = unfold ? dendrogram.getNodeCount() - 1 : dendrogram.getNodeCount();
+        ClusterOfSequences[] clusters = new ClusterOfSequences[nbNodes];
+
+        for (int node = 0; node < nbNodes; node++) {
+            if (node < n) {
+                clusters[node] = new ClusterOfSequences(dendrogram.getLeaf(node));
+            } else {
+                clusters[node] = new ClusterOfSequences(clusters[dendrogram.getLeft(node)],
+                        clusters[dendrogram.getRight(node)], dendrogram.getHeight(node),
+                        new SubtreeMembers(dendrogram, node));
+                clusters[node].sharedElements = true;
             }
-            newick += ")";
-        } else if (this.elements.size() == 1) { // On ajoute au newick la sequence.
-            newick = this.elements.get(0).getSeq();
-        } else { // Ce cas ci permet de gerer les clusters non clusterises et d'afficher les sequences presentes.
-            newick += "(";
-            for (int i = 0; i < this.elements.size(); i++) {
-                newick += this.elements.get(i).getSeq();
-                if (i < this.elements.size() - 1) {
-                    newick += ",";
-                }
+        }
+
+        if (unfold) {
+            this.subClusters.add(clusters[dendrogram.getLeft(roots[0])]);
+            this.subClusters.add(clusters[dendrogram.getRight(roots[0])]);
+            this.height = dendrogram.getHeight(roots[0]);
+        } else {
+            for (int root : roots) {
+                this.subClusters.add(clusters[root]);
             }
-            newick += ")";
         }
+    }
 
-        return newick;
+    /**
+     * Getteur des sous clusters.
+     *
+     * @return sous clusters, vide pour une feuille ou un cluster non clusterise
+     */
+    public ArrayList<ClusterOfSequences> getSubClusters() {
+        return this.subClusters;
+    }
+
+    /**
+     * Getteur des sequences du cluster.
+     *
+     * @return sequences du cluster, en lecture seule pour un sous cluster construit a partir d'un dendrogramme
+     */
+    public List<Sequence> getElements() {
+        return this.elements;
+    }
+
+    /**
+     * Getteur de la hauteur de fusion des sous clusters.
+     *
+     * @return distance de fusion, 0 pour une feuille, NaN si elle n'est pas connue
+     */
+    public double getHeight() {
+        return this.height;
     }
 
     /**
@@ -81,7 +182,7 @@ public class ClusterOfSequences {
      * @return String au format Newick.
      */
     public String getNewick() {
-        return this.getNewickIntermediate() + ";";
+        return new NewickWriter().toString(this);
     }
 
     /**
@@ -130,7 +231,7 @@ public class ClusterOfSequences {
             }
         }
         this.subClusters.removeAll(tmp);
-        return new ClusterOfSequences(tmp.get(0), tmp.get(1));
+        return new ClusterOfSequences(tmp.get(0), tmp.get(1), distMin);
     }
 
     /**
@@ -146,74 +247,287 @@ public class ClusterOfSequences {
         while (this.subClusters.size() > 2) {
             this.subClusters.add(getClosest());
         }
+        if (this.subClusters.size() == 2) {
+            this.height = this.subClusters.get(0).linkage(this.subClusters.get(1));
+        }
+    }
+
+    /**
+     * Clusterize le cluster actuel de façon agglomerative en calculant une seule fois chaque distance entre deux
+     * sequences. Donne les memes arbres que clusterize(), aux erreurs d'arrondi pres : linkage() ne donne pas toujours
+     * exactement le meme double selon l'ordre des deux clusters, ce qui peut inverser deux fils ou departager
+     * differemment deux fusions de meme distance.
+     */
+    public void clusterizeMatrix() {
+        this.clusterizeMatrix(new DistanceMatrix(this.elements));
     }
 
     /**
-     * Fonction recursive permettant la construction de la chaine au format Newick de façon alignee et respectant
-     * l'echelle. Prend en parametre la profondeur actuelle dans le cluster global, et la profondeur maximale.
+     * Clusterize le cluster actuel de façon agglomerative apres avoir calcule en parallele la matrice des distances.
      *
-     * @param currDepth Profondeur actuelle dans le cluster de sequences
-     * @param maxDepth  Profondeur maximale du cluster de sequences
-     * @return String au format Newick
+     * @param distance  fonction de distance entre deux sequences
+     * @param nbThreads nombre de threads utilises pour calculer la matrice
      */
-    private String getNewickIntermediateAligned(int currDepth, int maxDepth) {
-        String newick = "";
-        // Meme fonctionnement que pour le getNewickIntermediate, on fait juste une boucle a divers endroit pour ajouter
-        // des parentheses.
+    public void clusterizeMatrix(DistanceFunction distance, int nbThreads) {
+        this.clusterizeMatrix(new DistanceMatrixBuilder(distance, nbThreads).build(this.elements));
+    }
 
-        if (!this.subClusters.isEmpty()) {
-            newick += "(";
-            if (this.elements.size() == 1) {
-                for (int i = currDepth; i < maxDepth - 1; i++) {
-                    newick += "(";
-                }
-                newick += this.elements.get(0).getSeq();
-                for (int i = currDepth; i < maxDepth - 1; i++) {
-                    newick += ")";
+    /**
+     * Clusterize le cluster actuel de façon agglomerative d'apres une matrice de distances deja calculee. Apres chaque
+     * fusion, la ligne du nouveau cluster est mise a jour par la formule de Lance-Williams du lien moyen, sans
+     * recalculer les distances entre sequences. Les fusions sont calculees sur un Dendrogram, converti en sous
+     * clusters a la fin. La matrice est modifiee par la clusterisation.
+     *
+     * @param dist matrice des distances, la case (i, j) correspond aux sequences i et j de la liste d'elements
+     */
+    public void clusterizeMatrix(DistanceMatrix dist) {
+        this.setTree(Dendrogram.clusterizeMatrix(this.elements, dist));
+    }
+
+    /**
+     * Clusterize le cluster actuel de façon agglomerative selon le critere de liaison donne.
+     *
+     * @param linkage critere de liaison
+     */
+    public void clusterizeMatrix(Linkage linkage) {
+        this.clusterizeMatrix(new DistanceMatrix(this.elements), linkage);
+    }
+
+    /**
+     * Clusterize le cluster actuel de façon agglomerative d'apres une matrice de distances deja calculee, en
+     * fusionnant a chaque etape les deux clusters les plus proches selon le critere de liaison. La distance du nouveau
+     * cluster aux autres est mise a jour en temps constant par la formule de Lance-Williams du critere. La matrice est
+     * modifiee par la clusterisation.
+     *
+     * @param dist    matrice des distances, la case (i, j) correspond aux sequences i et j de la liste d'elements
+     * @param linkage critere de liaison
+     */
+    public void clusterizeMatrix(DistanceMatrix dist, Linkage linkage) {
+        this.setTree(Dendrogram.clusterizeMatrix(this.elements, dist, linkage));
+    }
+
+    /**
+     * Clusterize le cluster actuel de façon approchee : les sequences sont d'abord regroupees en canopees avec une
+     * distance peu couteuse, chaque canopee est clusterisee en parallele, puis les canopees sont reliees par la
+     * clusterisation de leurs centres.
+     *
+     * @param canopy clusterisation par canopees a utiliser
+     */
+    public void clusterizeCanopy(CanopyClustering canopy) {
+        this.setTree(canopy.clusterize(this.elements));
+    }
+
+    /**
+     * Clusterize le cluster actuel de façon agglomerative avec la chaine des plus proches voisins.
+     *
+     * @param linkage critere de liaison, qui doit etre reductible
+     */
+    public void clusterizeNNChain(Linkage linkage) {
+        this.clusterizeNNChain(new DistanceMatrix(this.elements), linkage);
+    }
+
+    /**
+     * Clusterize le cluster actuel de façon agglomerative avec la chaine des plus proches voisins : on suit une chaine
+     * de clusters dont chacun est le plus proche du precedent jusqu'a trouver deux plus proches voisins reciproques,
+     * que l'on fusionne. Pour un critere reductible, on obtient le meme dendrogramme qu'en fusionnant a chaque etape
+     * la paire la plus proche, mais en O(n^2) au lieu de O(n^3). Les fusions sont calculees sur un Dendrogram. La
+     * matrice est modifiee par la clusterisation.
+     *
+     * @param dist    matrice des distances, la case (i, j) correspond aux sequences i et j de la liste d'elements
+     * @param linkage critere de liaison, qui doit etre reductible
+     */
+    public void clusterizeNNChain(DistanceMatrix dist, Linkage linkage) {
+        this.setTree(Dendrogram.clusterizeNNChain(this.elements, dist, linkage));
+    }
+
+    /**
+     * Clusterize le cluster actuel avec la chaine des plus proches voisins sur une matrice de distances rangee dans un
+     * fichier projete en memoire, pour les jeux de sequences dont la matrice ne tient pas sur le tas. La matrice est
+     * calculee en parallele dans le fichier, puis la clusterisation ne garde en memoire que quelques tableaux de n
+     * entiers. Chaque recherche du plus proche voisin parcourt une ligne de la matrice et chaque fusion en reecrit
+     * une, ce qui touche une page du fichier pour MappedDistanceMatrix.TILE_SIZE sequences.
+     *
+     * @param path      fichier de la matrice, remplace
+     * @param distance  fonction de distance entre deux sequences
+     * @param nbThreads nombre de threads utilises pour calculer la matrice
+     * @param precision precision des distances rangees dans le fichier
+     * @param linkage   critere de liaison, qui doit etre reductible
+     * @throws IOException si le fichier ne peut pas etre ecrit
+     */
+    public void clusterizeNNChain(File path, DistanceFunction distance, int nbThreads,
+                                  MappedDistanceMatrix.Precision precision, Linkage linkage) throws IOException {
+        try (MappedDistanceMatrix dist = new MappedDistanceMatrix(path, this.elements.size(), precision)) {
+            new DistanceMatrixBuilder(distance, nbThreads).fill(this.elements, dist);
+            this.clusterizeNNChain(dist, linkage);
+        }
+    }
+
+    /**
+     * Insere une sequence dans le cluster deja clusterise, sans le reclusteriser. On descend depuis la racine jusqu'a
+     * une feuille en suivant a chaque niveau le sous cluster le plus proche, la distance a un cluster etant estimee
+     * par la moyenne des distances aux SUMMARY_SIZE sequences de son resume, reparties dans tout le cluster. On
+     * remonte ensuite le chemin jusqu'au premier cluster dont le pere a ete fusionne plus haut que la distance
+     * estimee : la sequence devient la soeur de ce cluster. Une insertion calcule ainsi au plus SUMMARY_SIZE distances
+     * par sous cluster de chaque niveau traverse, soit O(log n) pour un arbre equilibre. Les hauteurs des clusters
+     * binaires traverses sont mises a jour avec les distances estimees aux sous clusters voisins du chemin.
+     * La liste de sequences passee au constructeur n'est pas modifiee : elle est copiee a la premiere insertion.
+     *
+     * @param seq      sequence a inserer
+     * @param distance fonction de distance entre deux sequences
+     * @return ecart de l'arbre a une clusterisation agglomerative, en distance : de combien la sequence est fusionnee
+     *         au dessus de sa distance estimee au cluster rejoint, plus de combien chaque cluster du chemin depasse
+     *         la hauteur de son pere. 0 si la sequence trouve sa place et que l'arbre reste monotone
+     */
+    public double insert(Sequence seq, DistanceFunction distance) {
+        if (this.subClusters.isEmpty() && this.elements.size() != 1) {
+            throw new IllegalStateException("Le cluster doit etre clusterise avant d'y inserer des sequences.");
+        }
+
+        // Clusters du chemin, distance estimee de chacun a la sequence, et pour chacun sauf le dernier, somme des
+        // distances estimees aux autres sous clusters ponderees par leur taille.
+        ArrayList<ClusterOfSequences> path = new ArrayList<>();
+        ArrayList<Double> estimates = new ArrayList<>();
+        ArrayList<Double> others = new ArrayList<>();
+        ClusterOfSequences node = this;
+        path.add(this);
+        estimates.add(Double.NaN);
+
+        while (!node.subClusters.isEmpty()) {
+            ClusterOfSequences closest = null;
+            double distMin = Double.POSITIVE_INFINITY;
+            double sum = 0;
+            for (ClusterOfSequences sub : node.subClusters) {
+                double d = sub.summaryDistance(seq, distance);
+                sum += d * sub.elements.size();
+                if (d < distMin) {
+                    distMin = d;
+                    closest = sub;
                 }
-                newick += ",";
             }
-            for (int i = 0; i < this.subClusters.size(); i++) {
-                newick += this.subClusters.get(i).getNewickIntermediateAligned(currDepth + 1, maxDepth);
-                if (i < this.subClusters.size() - 1)
-                    newick += ",";
+            if (node == this) {
+                estimates.set(0, sum / this.elements.size());
             }
-            newick += ")";
-        } else {
-            for (int i = currDepth; i < maxDepth; i++) {
-                newick += "(";
-            }
-            for (int i = 0; i < this.elements.size(); i++) {
-                newick += this.elements.get(i).getSeq();
-                if (i < this.elements.size() - 1)
-                    newick += ",";
+            others.add(sum - distMin * closest.elements.size());
+            path.add(closest);
+            estimates.add(distMin);
+            node = closest;
+        }
+        if (path.size() == 1) {
+            estimates.set(0, distance.distance(this.elements.get(0), seq));
+        }
+
+        int target = path.size() - 1;
+        while (target > 0 && estimates.get(target) > path.get(target - 1).height) {
+            target--;
+        }
+
+        // Lien moyen d'un cluster binaire dont un sous cluster de taille c recoit la sequence :
+        // (h * c * o + somme des distances a l'autre sous cluster) / ((c + 1) * o).
+        for (int j = 0; j < target; j++) {
+            ClusterOfSequences cl = path.get(j);
+            if (cl.subClusters.size() == 2) {
+                int c = path.get(j + 1).elements.size();
+                int o = cl.elements.size() - c;
+                cl.height = (cl.height * c * o + others.get(j)) / ((double) (c + 1) * o);
             }
-            for (int i = currDepth; i < maxDepth; i++) {
-                newick += ")";
+            cl.addElement(seq);
+        }
+        ClusterOfSequences grafted = path.get(target);
+        double gap = Math.max(0, grafted.height - estimates.get(target));
+        grafted.graft(seq, Math.max(estimates.get(target), grafted.height));
+
+        for (int j = 1; j <= target; j++) {
+            gap += Math.max(0, path.get(j).height - path.get(j - 1).height);
+        }
+        return gap;
+    }
+
+    /**
+     * Estime la distance entre une sequence et le cluster par la moyenne des distances aux sequences de son resume.
+     *
+     * @param seq      sequence
+     * @param distance fonction de distance entre deux sequences
+     * @return distance estimee
+     */
+    private double summaryDistance(Sequence seq, DistanceFunction distance) {
+        if (this.summary == null) {
+            // Sequences regulierement espacees : les sequences d'un cluster sont celles de ses sous clusters a la
+            // suite, le resume couvre donc tous les sous clusters.
+            int n = this.elements.size();
+            int nb = Math.min(SUMMARY_SIZE, n);
+            this.summary = new ArrayList<>(nb);
+            for (int i = 0; i < nb; i++) {
+                this.summary.add(this.elements.get((int) ((2L * i + 1) * n / (2L * nb))));
             }
         }
-        return newick;
+        double a = 0;
+        for (Sequence s : this.summary) {
+            a += distance.distance(s, seq);
+        }
+        return a / this.summary.size();
     }
 
     /**
-     * Permet de connaitre la profondeur d'un cluster de sequences clusterise.
+     * Remplace le contenu du cluster par la fusion, a la hauteur height, d'une copie de ce contenu et d'une feuille.
+     * Le cluster garde son identite, ce qui evite de modifier la liste des sous clusters de son pere.
      *
-     * @return Int correspondant a la profondeur d'un cluster de sequences
+     * @param seq    sequence de la nouvelle feuille
+     * @param height distance de fusion
      */
-    private int getDepth() {
-        int maxDepth = 0;
-        int tmp;
+    private void graft(Sequence seq, double height) {
+        ClusterOfSequences moved = new ClusterOfSequences(new ArrayList<>(this.elements));
+        moved.subClusters = this.subClusters;
+        moved.height = this.height;
+        moved.summary = this.summary;
 
-        if (!this.subClusters.isEmpty()) {
-            for (ClusterOfSequences cl : this.subClusters) {
-                tmp = cl.getDepth();
-                if (tmp > maxDepth) {
-                    maxDepth = tmp;
-                }
+        this.subClusters = new ArrayList<>();
+        this.subClusters.add(moved);
+        this.subClusters.add(new ClusterOfSequences(seq));
+        this.addElement(seq);
+        this.height = height;
+        this.summary = null;
+    }
+
+    /**
+     * Ajoute une sequence au cluster, en copiant d'abord ses sequences si elles sont partagees avec un dendrogramme.
+     *
+     * @param seq sequence
+     */
+    private void addElement(Sequence seq) {
+        if (this.sharedElements) {
+            this.elements = new ArrayList<>(this.elements);
+            this.sharedElements = false;
+        }
+        this.elements.add(seq);
+    }
+
+    /**
+     * Vue en lecture seule sur les sequences d'un noeud de dendrogramme. Sa taille est celle du noeud, sans parcours
+     * du sous arbre ; les feuilles ne sont enumerees qu'au premier acces a une sequence.
+     */
+    private static class SubtreeMembers extends AbstractList<Sequence> {
+
+        private final Dendrogram dendrogram;
+        private final int node;
+        private List<Sequence> members;
+
+        SubtreeMembers(Dendrogram dendrogram, int node) {
+            this.dendrogram = dendrogram;
+            this.node = node;
+        }
+
+        @Override
+        public Sequence get(int index) {
+            if (this.members == null) {
+                this.members = this.dendrogram.getMembers(this.node);
             }
+            return this.members.get(index);
         }
 
-        return maxDepth + 1;
+        @Override
+        public int size() {
+            return this.dendrogram.getSize(this.node);
+        }
     }
 
     /**
@@ -222,107 +536,116 @@ public class ClusterOfSequences {
      * @return String au format Newick
      */
     public String getNewickAligned() {
-        return this.getNewickIntermediateAligned(0, this.getDepth()) + ";";
+        return new NewickWriter().toStringAligned(this);
+    }
+
+    /**
+     * Clusterize le cluster actuel de façon divisive. Les distances entre sequences sont calculees une seule fois dans
+     * une matrice partagee par toutes les divisions.
+     */
+    public void clusterizeDivisive() {
+        DivisiveSplitter splitter = new DivisiveSplitter(this.elements);
+        divideAll(this, splitter, splitter.all());
     }
 
     /**
-     * Permet de construire une liste de sequence de taille nb consituee des sequences les plus proches de la liste
-     * passee en parametre
+     * Clusterize le cluster actuel de façon divisive en parallele. Les deux moities d'une division sont independantes :
+     * chacune est divisee par une tache d'un ForkJoinPool, jusqu'aux clusters de moins de DIVISIVE_SEQUENTIAL_THRESHOLD
+     * sequences, divises sequentiellement. La matrice des distances est elle aussi calculee en parallele. Chaque
+     * division ne dependant que des sequences du cluster divise, l'arbre obtenu est celui de clusterizeDivisive().
      *
-     * @param list Liste de sequence sur laquelle se baser
-     * @param nb   Nombre de sequence dans la liste a renvoyer
-     * @return La liste de sequence de taille nb la plus proche d'apres la liste passee en parametre
+     * @param nbThreads nombre de threads du ForkJoinPool
      */
-    private ArrayList<Sequence> getClosestSeq(ArrayList<Sequence> list, int nb) {
+    public void clusterizeDivisive(int nbThreads) {
+        DivisiveSplitter splitter = new DivisiveSplitter(this.elements,
+                new DistanceMatrixBuilder(DistanceFunction.SEQUENCE, nbThreads).build(this.elements));
+        ForkJoinPool pool = new ForkJoinPool(nbThreads);
+        try {
+            pool.invoke(new DivideTask(this, splitter, splitter.all()));
+        } finally {
+            pool.shutdown();
+        }
+    }
 
-        ArrayList<Sequence> tmp = new ArrayList<>(list);
-        ArrayList<Sequence> l1 = new ArrayList<>();
-        ArrayList<Sequence> l2 = new ArrayList<>();
-        double distMin = 1;
+    /**
+     * Divise un cluster et tous ses sous clusters. Les clusters restant a diviser sont gardes dans une pile explicite
+     * plutot que par des appels recursifs, pour que la profondeur de l'arbre ne soit limitee que par le tas.
+     *
+     * @param root     cluster a diviser
+     * @param splitter decoupeur partage par toutes les divisions
+     * @param members  indices des sequences du cluster dans la liste d'elements du decoupeur
+     */
+    private static void divideAll(ClusterOfSequences root, DivisiveSplitter splitter, int[] members) {
+        // Pile des clusters restant a diviser et des indices de leurs sequences dans la liste d'elements.
+        ArrayList<ClusterOfSequences> stack = new ArrayList<>();
+        ArrayList<int[]> lists = new ArrayList<>();
+        stack.add(root);
+        lists.add(members);
+
+        while (!stack.isEmpty()) {
+            ClusterOfSequences cl = stack.remove(stack.size() - 1);
+            int[][] halves = cl.divide(splitter, lists.remove(lists.size() - 1));
+            // On empile le second sous cluster en premier pour diviser les sous clusters dans l'ordre.
+            for (int i = halves.length - 1; i >= 0; i--) {
+                stack.add(cl.subClusters.get(i));
+                lists.add(halves[i]);
+            }
+        }
+    }
 
-        // On cherche les deux sequences de la liste les plus proches puis on les retire de la liste
-        for (Sequence el1 : tmp) {
-            for (Sequence el2 : tmp) {
-                if (el1 != el2) {
-                    double dist = el1.distance(el2);
+    /**
+     * Tache divisant un cluster, puis ses deux sous clusters dans deux taches paralleles.
+     */
+    private static class DivideTask extends RecursiveAction {
 
-                    if (dist <= distMin) {
-                        distMin = dist;
-                        l1.clear();
-                        l1.add(el1);
-                        l1.add(el2);
-                    }
-                }
-            }
+        private static final long serialVersionUID = 1L;
+
+        private ClusterOfSequences cluster;
+        private DivisiveSplitter splitter;
+        private int[] members;
+
+        DivideTask(ClusterOfSequences cluster, DivisiveSplitter splitter, int[] members) {
+            this.cluster = cluster;
+            this.splitter = splitter;
+            this.members = members;
         }
-        tmp.removeAll(l1);
-
-        /*
-         *  Tant que la liste a renvoyer n'est pas a la taille definie, on continue a la remplir avec l'element le plus
-         *  proche de la liste tampon
-         */
-        while (l1.size() < nb) {
-            distMin = 1;
-            for (Sequence el : tmp) {
-                double dist = (new ClusterOfSequences(l1)).linkage(new ClusterOfSequences(el));
-
-                if (dist <= distMin) {
-                    distMin = dist;
-                    l2.clear();
-                    l2.add(el);
-                }
+
+        @Override
+        protected void compute() {
+            if (this.members.length < DIVISIVE_SEQUENTIAL_THRESHOLD) {
+                divideAll(this.cluster, this.splitter, this.members);
+                return;
+            }
+            int[][] halves = this.cluster.divide(this.splitter, this.members);
+            if (halves.length == 2) {
+                invokeAll(new DivideTask(this.cluster.subClusters.get(0), this.splitter, halves[0]),
+                        new DivideTask(this.cluster.subClusters.get(1), this.splitter, halves[1]));
             }
-            l1.addAll(l2);
-            tmp.removeAll(l2);
-            l2.clear();
         }
-
-        return l1;
     }
 
     /**
-     * Clusterize le cluster actuel de façon divisive.
+     * Divise le cluster actuel en deux sous clusters, sans diviser ces derniers.
+     *
+     * @param splitter decoupeur partage par toutes les divisions
+     * @param members  indices des sequences du cluster dans la liste d'elements du decoupeur
+     * @return les indices des sequences des deux sous clusters a diviser, vide s'il n'y en a pas
      */
-    public void clusterizeDivisive() {
-        ArrayList<Sequence> tmp2;
-
+    private int[][] divide(DivisiveSplitter splitter, int[] members) {
         // S'il n'y a que deux elements, on cree deux sous clusters avec chacun une sequence
         if (this.elements.size() == 2) {
             for (Sequence el : this.elements) {
                 this.subClusters.add(new ClusterOfSequences(el));
             }
         } else if (this.elements.size() > 2) {
-            // S'il y a plus de deux elements on va chercher la liste d'elements la plus proche de la taille de notre
-            // liste divisee par deux.
-            ArrayList<Sequence> tmp = this.getClosestSeq(this.elements, this.elements.size() / 2);
-
-            // S'il y a 5 elements ou plus et que le nombre est impair, on doit creer une autre liste avec les autres
-            // elements de taille de la liste divisee par deux pour isoler l'element impair et le placer dans la liste
-            // ou il sera le plus proche puis creer les subclusters.
-            if (this.elements.size() >= 5 && this.elements.size() % 2 == 1) {
-                ArrayList<Sequence> alone = new ArrayList<>(this.elements);
-                alone.removeAll(tmp);
-                tmp2 = this.getClosestSeq(alone, alone.size() - 1);
-                alone.removeAll(tmp2);
-
-                if ((new ClusterOfSequences(tmp).linkage(new ClusterOfSequences(alone))) <
-                        (new ClusterOfSequences(tmp2).linkage(new ClusterOfSequences(alone)))) {
-                    tmp.addAll(alone);
-                } else {
-                    tmp2.addAll(alone);
-                }
-            } else {
-                // Sinon, on cree simplement la seconde liste d'apres la liste d'elements amputee de tmp.
-                tmp2 = new ArrayList<>(this.elements);
-                tmp2.removeAll(tmp);
-            }
-            // On cree les nouveaux clusters d'apres les listes obtenues
-            this.subClusters.add(new ClusterOfSequences(tmp));
-            this.subClusters.add(new ClusterOfSequences(tmp2));
-            // On rappelle ensuite la methode sur les deux nouveaux sous clusters
-            this.subClusters.get(0).clusterizeDivisive();
-            this.subClusters.get(1).clusterizeDivisive();
+            // S'il y a plus de deux elements, on coupe la liste en deux groupes de sequences proches, qui seront
+            // divises a leur tour.
+            int[][] halves = splitter.split(members);
+            this.subClusters.add(new ClusterOfSequences(splitter.getSequences(halves[0])));
+            this.subClusters.add(new ClusterOfSequences(splitter.getSequences(halves[1])));
+            return halves;
         }
+        return new int[0][];
     }
 
     public static void main(String[] args) {
@@ -356,6 +679,26 @@ public class ClusterOfSequences {
         System.out.println("Newick de biocluster clustierized de façon agglomerative : " + bioCluster.getNewick());
         System.out.println("Temps d'exécution : " + (t2 - t));
 
+        ClusterOfSequences bioCluster3 = new ClusterOfSequences(new ArrayList<>(listSeq));
+        t = System.nanoTime();
+        bioCluster3.clusterizeMatrix();
+        t2 = System.nanoTime();
+        System.out.println("Newick de biocluster clustierized avec matrice de distances : " + bioCluster3.getNewick());
+        System.out.println("Temps d'exécution : " + (t2 - t));
+
+        ClusterOfSequences bioCluster4 = new ClusterOfSequences(new ArrayList<>(listSeq));
+        t = System.nanoTime();
+        bioCluster4.clusterizeNNChain(Linkage.AVERAGE);
+        t2 = System.nanoTime();
+        System.out.println("Newick de biocluster clustierized par chaine des plus proches voisins : " + bioCluster4.getNewick());
+        System.out.println("Temps d'exécution : " + (t2 - t));
+
+        for (Linkage linkage : Linkage.values()) {
+            ClusterOfSequences bioCluster5 = new ClusterOfSequences(new ArrayList<>(listSeq));
+            bioCluster5.clusterizeMatrix(linkage);
+            System.out.println("Newick de biocluster clustierized au critere " + linkage + " : " + bioCluster5.getNewick());
+        }
+
         System.out.println("Newick de biocluster non clusterized (aligne) : " + bioCluster2.getNewickAligned());
         t = System.nanoTime();
         bioCluster2.clusterizeDivisive();
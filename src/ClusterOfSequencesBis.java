@@ -1,15 +1,27 @@
 import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class ClusterOfSequencesBis {
 
+    /**
+     * Taille en dessous de laquelle un cluster est divise sequentiellement par clusterizeDivisive(nbThreads).
+     */
+    public static final int DIVISIVE_SEQUENTIAL_THRESHOLD = 256;
+
     private ArrayList<ClusterOfSequencesBis> subClusters;
     private Sequence element;
+    // Distance a laquelle les sous clusters ont ete fusionnes : 0 pour une feuille, NaN si elle n'est pas connue.
+    private double height;
+    // Sequences des feuilles, calculees au premier appel de getAllSeq() puis conservees.
+    private ArrayList<Sequence> leaves;
 
     /**
      * Constructeur par defaut.
      */
     public ClusterOfSequencesBis() {
         this.subClusters = new ArrayList<>();
+        this.height = Double.NaN;
     }
 
     /**
@@ -20,6 +32,7 @@ public class ClusterOfSequencesBis {
     public ClusterOfSequencesBis(Sequence element) {
         this.subClusters = new ArrayList<>();
         this.element = element;
+        this.height = 0;
     }
 
     /**
@@ -29,33 +42,93 @@ public class ClusterOfSequencesBis {
      * @param cluster2 Cluster
      */
     public ClusterOfSequencesBis(ClusterOfSequencesBis cluster1, ClusterOfSequencesBis cluster2) {
+        this(cluster1, cluster2, Double.NaN);
+    }
+
+    /**
+     * Construit un ClusterOfSequenceBis d'apres deux clusters fusionnes a la distance height.
+     *
+     * @param cluster1 Cluster
+     * @param cluster2 Cluster
+     * @param height   distance de fusion des deux clusters
+     */
+    public ClusterOfSequencesBis(ClusterOfSequencesBis cluster1, ClusterOfSequencesBis cluster2, double height) {
         this.subClusters = new ArrayList<>();
         this.subClusters.add(cluster1);
         this.subClusters.add(cluster2);
+        this.height = height;
     }
 
     /**
-     * Fonction recursive permettant la construction de la chaine au format Newick.
+     * Construit le cluster clusterise correspondant a un dendrogramme : ses sous clusters sont les deux fils de la
+     * racine.
      *
-     * @return String au format Newick.
+     * @param dendrogram dendrogramme
      */
-    private String getNewickIntermediate() {
-        String newick = "";
-
-        if (!this.subClusters.isEmpty()) {
-            newick += "(";
-            for (int i = 0; i < this.subClusters.size(); i++) {
-                newick += this.subClusters.get(i).getNewickIntermediate();
-                if (i == 0) {
-                    newick += ",";
-                }
+    public ClusterOfSequencesBis(Dendrogram dendrogram) {
+        this();
+        this.setTree(dendrogram);
+    }
+
+    /**
+     * Ajoute aux sous clusters ceux d'un dendrogramme, construits par numero de noeud croissant. Les deux fils d'une
+     * racine unique deviennent les sous clusters, comme a la fin de clusterize().
+     *
+     * @param dendrogram dendrogramme
+     */
+    private void setTree(Dendrogram dendrogram) {
+        int n = dendrogram.getLeafCount();
+        int[] roots = dendrogram.getRoots();
+        boolean unfold = roots.length == 1 && !dendrogram.isLeaf(roots[0]);
+        int nbNodes = unfold ? dendrogram.getNodeCount() - 1 : dendrogram.getNodeCount();
+        ClusterOfSequencesBis[] clusters = new ClusterOfSequencesBis[nbNodes];
+
+        for (int node = 0; node < nbNodes; node++) {
+            if (node < n) {
+                clusters[node] = new ClusterOfSequencesBis(dendrogram.getLeaf(node));
+            } else {
+                clusters[node] = new ClusterOfSequencesBis(clusters[dendrogram.getLeft(node)],
+                        clusters[dendrogram.getRight(node)], dendrogram.getHeight(node));
+            }
+        }
+
+        this.leaves = null;
+        if (unfold) {
+            this.subClusters.add(clusters[dendrogram.getLeft(roots[0])]);
+            this.subClusters.add(clusters[dendrogram.getRight(roots[0])]);
+            this.height = dendrogram.getHeight(roots[0]);
+        } else {
+            for (int root : roots) {
+                this.subClusters.add(clusters[root]);
             }
-            newick += ")";
-        } else if (this.element != null) {
-            newick = this.element.getSeq();
         }
+    }
 
-        return newick;
+    /**
+     * Getteur des sous clusters.
+     *
+     * @return sous clusters, vide pour une feuille
+     */
+    public ArrayList<ClusterOfSequencesBis> getSubClusters() {
+        return this.subClusters;
+    }
+
+    /**
+     * Getteur de la sequence d'une feuille.
+     *
+     * @return sequence, null si le cluster n'est pas une feuille
+     */
+    public Sequence getElement() {
+        return this.element;
+    }
+
+    /**
+     * Getteur de la hauteur de fusion des sous clusters.
+     *
+     * @return distance de fusion, 0 pour une feuille, NaN si elle n'est pas connue
+     */
+    public double getHeight() {
+        return this.height;
     }
 
     /**
@@ -64,24 +137,36 @@ public class ClusterOfSequencesBis {
      * @return String au format Newick.
      */
     public String getNewick() {
-        return this.getNewickIntermediate() + ";";
+        return new NewickWriter().toString(this);
     }
 
     /**
-     * Fonction recursive permettant de collecter toutes les sequences d'un cluster
+     * Permet de collecter toutes les sequences d'un cluster, dans l'ordre des feuilles, en parcourant l'arbre avec une
+     * pile explicite. La liste est gardee en cache : les sous clusters d'un cluster construit par fusion ne changent
+     * plus, et les methodes qui modifient ceux du cluster actuel vident le cache.
      *
-     * @return Une liste contenant toutes les sequences d'un cluster
+     * @return Une liste contenant toutes les sequences d'un cluster, a ne pas modifier
      */
     private ArrayList<Sequence> getAllSeq() {
+        if (this.leaves != null) {
+            return this.leaves;
+        }
         ArrayList<Sequence> list = new ArrayList<>();
+        ArrayList<ClusterOfSequencesBis> stack = new ArrayList<>();
+        stack.add(this);
 
-        if (this.element == null) {
-            list.addAll(this.subClusters.get(0).getAllSeq());
-            list.addAll(this.subClusters.get(1).getAllSeq());
-        } else {
-            list.add(this.element);
+        while (!stack.isEmpty()) {
+            ClusterOfSequencesBis cl = stack.remove(stack.size() - 1);
+            if (cl.element != null) {
+                list.add(cl.element);
+            } else {
+                for (int i = cl.subClusters.size() - 1; i >= 0; i--) {
+                    stack.add(cl.subClusters.get(i));
+                }
+            }
         }
 
+        this.leaves = list;
         return list;
     }
 
@@ -92,154 +177,251 @@ public class ClusterOfSequencesBis {
      * @return double correspondant a la distance
      */
     public double linkage(ClusterOfSequencesBis aCluster) {
+        return this.linkageSum(aCluster) / ((double) this.getAllSeq().size() * aCluster.getAllSeq().size());
+    }
+
+    /**
+     * Calcule la somme des distances entre chaque sequence du cluster et chaque sequence de l'autre cluster.
+     *
+     * @param aCluster Cluster avec lequel on calcule la somme
+     * @return somme des distances
+     */
+    private double linkageSum(ClusterOfSequencesBis aCluster) {
         double a = 0;
-        int count = 0;
+        ArrayList<Sequence> others = aCluster.getAllSeq();
 
         for (Sequence seq : this.getAllSeq()) {
-            for (Sequence subSeq : aCluster.getAllSeq()) {
+            for (Sequence subSeq : others) {
                 a += seq.distance(subSeq);
-                count++;
             }
         }
 
-        return a / count;
+        return a;
     }
 
     /**
-     * Permet de connaitre les deux clusters les plus proches dans une liste de clusters.
-     *
-     * @return Un nouveau cluster constitue des deux clusters les plus proches.
+     * Clusterize le cluster actuel de façon agglomerative. Au lieu de recalculer le lien moyen de chaque paire de
+     * clusters a chaque etape, on garde la somme des distances entre les sequences de chaque paire : apres une fusion,
+     * la somme du nouveau cluster avec un cluster k est la somme de celles de ses deux fils avec k, et le lien moyen
+     * est cette somme divisee par le produit des tailles. Chaque distance entre sequences n'est calculee qu'une fois.
+     * @param elements la liste de sequence a utiliser pour clusteriser.
      */
-    private ClusterOfSequencesBis getClosest() {
-        ArrayList<ClusterOfSequencesBis> tmp = new ArrayList<>();
-        double distMin = 1;
-
-        for (ClusterOfSequencesBis cl1 : this.subClusters) {
-            for (ClusterOfSequencesBis cl2 : this.subClusters) {
-                if (cl1 != cl2) {
-                    double dist = cl1.linkage(cl2);
-
-                    if (dist <= distMin) {
-                        distMin = dist;
-                        tmp.clear();
-                        tmp.add(cl1);
-                        tmp.add(cl2);
+    public void clusterize(ArrayList<Sequence> elements) {
+        for (Sequence el : elements) {
+            this.subClusters.add(new ClusterOfSequencesBis(el));
+        }
+        this.leaves = null;
+
+        int n = this.subClusters.size();
+        ClusterOfSequencesBis[] clusters = this.subClusters.toArray(new ClusterOfSequencesBis[0]);
+        int[] sizes = new int[n];
+        // order contient les indices des clusters actifs dans l'ordre de la liste de sous clusters.
+        int[] order = new int[n];
+        DistanceMatrix sums = new DistanceMatrix(n);
+
+        for (int i = 0; i < n; i++) {
+            sizes[i] = clusters[i].getAllSeq().size();
+            order[i] = i;
+            for (int j = 0; j < i; j++) {
+                sums.set(j, i, clusters[j].linkageSum(clusters[i]));
+            }
+        }
+
+        int count = n;
+        while (count > 2) {
+            // On garde, comme en parcourant toutes les paires ordonnees (cl1, cl2) de la liste, la derniere paire de
+            // lien minimal : celle dont l'indice de cl1 est le plus grand, puis celui de cl2.
+            int p = -1;
+            int q = -1;
+            double distMin = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < count; i++) {
+                for (int j = i + 1; j < count; j++) {
+                    double d = sums.get(order[i], order[j]) / ((double) sizes[order[i]] * sizes[order[j]]);
+                    if (d < distMin || (d == distMin && j >= p)) {
+                        distMin = d;
+                        p = j;
+                        q = i;
                     }
                 }
             }
+
+            int a = order[p];
+            int b = order[q];
+            for (int k = 0; k < count; k++) {
+                int c = order[k];
+                if (c != a && c != b) {
+                    sums.set(a, c, sums.get(a, c) + sums.get(b, c));
+                }
+            }
+            clusters[a] = new ClusterOfSequencesBis(clusters[a], clusters[b], distMin);
+            clusters[b] = null;
+            sizes[a] += sizes[b];
+
+            // Le nouveau cluster est ajoute a la fin de la liste.
+            int w = 0;
+            for (int k = 0; k < count; k++) {
+                if (order[k] != a && order[k] != b) {
+                    order[w++] = order[k];
+                }
+            }
+            order[w] = a;
+            count--;
+        }
+
+        this.subClusters.clear();
+        for (int k = 0; k < count; k++) {
+            this.subClusters.add(clusters[order[k]]);
+        }
+        if (count == 2) {
+            this.height = sums.get(order[0], order[1]) / ((double) sizes[order[0]] * sizes[order[1]]);
         }
-        this.subClusters.removeAll(tmp);
-        return new ClusterOfSequencesBis(tmp.get(0), tmp.get(1));
     }
 
     /**
-     * Clusterize le cluster actuel de façon agglomerative.
+     * Clusterize le cluster actuel de façon agglomerative apres avoir calcule en parallele la matrice des distances.
+     *
+     * @param elements  la liste de sequence a utiliser pour clusteriser.
+     * @param distance  fonction de distance entre deux sequences
+     * @param nbThreads nombre de threads utilises pour calculer la matrice
+     */
+    public void clusterizeMatrix(ArrayList<Sequence> elements, DistanceFunction distance, int nbThreads) {
+        this.clusterizeMatrix(elements, new DistanceMatrixBuilder(distance, nbThreads).build(elements));
+    }
+
+    /**
+     * Clusterize le cluster actuel de façon agglomerative d'apres une matrice de distances deja calculee, en mettant a
+     * jour les distances au lien moyen par la formule de Lance-Williams. Les fusions sont calculees sur un Dendrogram.
+     * La matrice est modifiee par la clusterisation.
+     *
      * @param elements la liste de sequence a utiliser pour clusteriser.
+     * @param dist     matrice des distances, la case (i, j) correspond aux sequences i et j de la liste
      */
-    public void clusterize(ArrayList<Sequence> elements) {
-        for (Sequence el : elements) {
-            this.subClusters.add(new ClusterOfSequencesBis(el));
-        }
-        while (this.subClusters.size() > 2) {
-            this.subClusters.add(getClosest());
+    public void clusterizeMatrix(ArrayList<Sequence> elements, DistanceMatrix dist) {
+        this.setTree(Dendrogram.clusterizeMatrix(elements, dist));
+    }
+
+    /**
+     * Clusterize le cluster actuel de façon agglomerative d'apres une matrice de distances deja calculee, en
+     * fusionnant a chaque etape les deux clusters les plus proches selon le critere de liaison. La matrice est
+     * modifiee par la clusterisation.
+     *
+     * @param elements la liste de sequence a utiliser pour clusteriser.
+     * @param dist     matrice des distances, la case (i, j) correspond aux sequences i et j de la liste
+     * @param linkage  critere de liaison
+     */
+    public void clusterizeMatrix(ArrayList<Sequence> elements, DistanceMatrix dist, Linkage linkage) {
+        this.setTree(Dendrogram.clusterizeMatrix(elements, dist, linkage));
+    }
+
+    /**
+     * Clusterize le cluster actuel de façon divisive. Les distances entre sequences sont calculees une seule fois dans
+     * une matrice partagee par toutes les divisions.
+     * @param elements la liste de sequence a utiliser pour clusteriser.
+     */
+    public void clusterizeDivisive(ArrayList<Sequence> elements) {
+        DivisiveSplitter splitter = new DivisiveSplitter(elements);
+        divideAll(this, splitter, splitter.all());
+    }
+
+    /**
+     * Clusterize le cluster actuel de façon divisive en parallele. Les deux moities d'une division sont independantes :
+     * chacune est divisee par une tache d'un ForkJoinPool, jusqu'aux clusters de moins de DIVISIVE_SEQUENTIAL_THRESHOLD
+     * sequences, divises sequentiellement. La matrice des distances est elle aussi calculee en parallele. Chaque
+     * division ne dependant que des sequences du cluster divise, l'arbre obtenu est celui de clusterizeDivisive().
+     *
+     * @param elements  la liste de sequence a utiliser pour clusteriser
+     * @param nbThreads nombre de threads du ForkJoinPool
+     */
+    public void clusterizeDivisive(ArrayList<Sequence> elements, int nbThreads) {
+        DivisiveSplitter splitter = new DivisiveSplitter(elements,
+                new DistanceMatrixBuilder(DistanceFunction.SEQUENCE, nbThreads).build(elements));
+        ForkJoinPool pool = new ForkJoinPool(nbThreads);
+        try {
+            pool.invoke(new DivideTask(this, splitter, splitter.all()));
+        } finally {
+            pool.shutdown();
         }
     }
 
     /**
-     * Permet de construire une liste de sequence de taille nb consituee des sequences les plus proches de la liste
-     * passee en parametre
+     * Divise un cluster et tous ses sous clusters. Les clusters restant a diviser sont gardes dans une pile explicite
+     * plutot que par des appels recursifs, pour que la profondeur de l'arbre ne soit limitee que par le tas.
      *
-     * @param list Liste de sequence sur laquelle se baser
-     * @param nb   Nombre de sequence dans la liste a renvoyer
-     * @return La liste de sequence de taille nb la plus proche d'apres la liste passee en parametre
+     * @param root     cluster a diviser
+     * @param splitter decoupeur partage par toutes les divisions
+     * @param members  indices des sequences du cluster dans la liste d'elements du decoupeur
      */
-    private ArrayList<Sequence> getClosestSeq(ArrayList<Sequence> list, int nb) {
-
-        ArrayList<Sequence> tmp = new ArrayList<>(list);
-        ArrayList<Sequence> l1 = new ArrayList<>();
-        ArrayList<Sequence> l2 = new ArrayList<>();
-        double distMin = 1;
-
-        // On cherche les deux sequences de la liste les plus proches puis on les retire de la liste
-        for (Sequence el1 : tmp) {
-            for (Sequence el2 : tmp) {
-                if (el1 != el2) {
-                    double dist = el1.distance(el2);
-
-                    if (dist <= distMin) {
-                        distMin = dist;
-                        l1.clear();
-                        l1.add(el1);
-                        l1.add(el2);
-                    }
-                }
+    private static void divideAll(ClusterOfSequencesBis root, DivisiveSplitter splitter, int[] members) {
+        // Pile des clusters restant a diviser et des indices de leurs sequences dans la liste d'elements.
+        ArrayList<ClusterOfSequencesBis> stack = new ArrayList<>();
+        ArrayList<int[]> lists = new ArrayList<>();
+        stack.add(root);
+        lists.add(members);
+
+        while (!stack.isEmpty()) {
+            ClusterOfSequencesBis cl = stack.remove(stack.size() - 1);
+            int[][] halves = cl.divide(splitter, lists.remove(lists.size() - 1));
+            // On empile le second sous cluster en premier pour diviser les sous clusters dans l'ordre.
+            for (int i = halves.length - 1; i >= 0; i--) {
+                stack.add(cl.subClusters.get(i));
+                lists.add(halves[i]);
             }
         }
-        tmp.removeAll(l1);
-
-        /*
-         *  Tant que la liste a renvoyer n'est pas a la taille definie, on continue a la remplir avec l'element le plus
-         *  proche de la liste tampon
-         */
-        while (l1.size() < nb) {
-            distMin = 1;
-            for (Sequence el : tmp) {
-                double dist = (new ClusterOfSequences(l1)).linkage(new ClusterOfSequences(el));
-
-                if (dist <= distMin) {
-                    distMin = dist;
-                    l2.clear();
-                    l2.add(el);
-                }
-            }
-            l1.addAll(l2);
-            tmp.removeAll(l2);
-            l2.clear();
+    }
+
+    /**
+     * Tache divisant un cluster, puis ses deux sous clusters dans deux taches paralleles.
+     */
+    private static class DivideTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private ClusterOfSequencesBis cluster;
+        private DivisiveSplitter splitter;
+        private int[] members;
+
+        DivideTask(ClusterOfSequencesBis cluster, DivisiveSplitter splitter, int[] members) {
+            this.cluster = cluster;
+            this.splitter = splitter;
+            this.members = members;
         }
 
-        return l1;
+        @Override
+        protected void compute() {
+            if (this.members.length < DIVISIVE_SEQUENTIAL_THRESHOLD) {
+                divideAll(this.cluster, this.splitter, this.members);
+                return;
+            }
+            int[][] halves = this.cluster.divide(this.splitter, this.members);
+            if (halves.length == 2) {
+                invokeAll(new DivideTask(this.cluster.subClusters.get(0), this.splitter, halves[0]),
+                        new DivideTask(this.cluster.subClusters.get(1), this.splitter, halves[1]));
+            }
+        }
     }
 
     /**
-     * Clusterize le cluster actuel de façon divisive.
-     * @param elements la liste de sequence a utiliser pour clusteriser.
+     * Divise le cluster actuel en deux sous clusters vides, sans les diviser a leur tour.
+     *
+     * @param splitter decoupeur partage par toutes les divisions
+     * @param members  indices des sequences du cluster dans la liste d'elements du decoupeur
+     * @return les indices des sequences des deux sous clusters a diviser, vide s'il n'y en a pas
      */
-    public void clusterizeDivisive(ArrayList<Sequence> elements) {
-        ArrayList<Sequence> tmp2;
+    private int[][] divide(DivisiveSplitter splitter, int[] members) {
+        this.leaves = null;
 
-        if (elements.size() == 2) { // S'il y a deux elements, on cree deux sous clusters d'apres les sequences.
-            for (Sequence el : elements) {
+        if (members.length == 2) { // S'il y a deux elements, on cree deux sous clusters d'apres les sequences.
+            for (Sequence el : splitter.getSequences(members)) {
                 this.subClusters.add(new ClusterOfSequencesBis(el));
             }
-        } else if (elements.size() == 1) { // S'il n'y a qu'un seul element, on l'assigne au cluster courant.
-            this.element = elements.get(0);
-        } else if (elements.size() > 2) {
-            ArrayList<Sequence> tmp = this.getClosestSeq(elements, elements.size() / 2);
-
-            if (elements.size() >= 5 && elements.size() % 2 == 1) {
-                // S'il y a 5 elements ou plus et que le nombre est impair, on doit creer une autre liste avec les
-                // autres elements de taille de la liste divisee par deux pour isoler l'element impair et le placer dans
-                // la liste ou il sera le plus proche puis creer les subclusters.
-                ArrayList<Sequence> alone = new ArrayList<>(elements);
-                alone.removeAll(tmp);
-                tmp2 = this.getClosestSeq(alone, alone.size() - 1);
-                alone.removeAll(tmp2);
-
-                if ((new ClusterOfSequences(tmp).linkage(new ClusterOfSequences(alone))) <
-                        (new ClusterOfSequences(tmp2).linkage(new ClusterOfSequences(alone)))) {
-                    tmp.addAll(alone);
-                } else {
-                    tmp2.addAll(alone);
-                }
-            } else {
-                tmp2 = elements;
-                tmp2.removeAll(tmp);
-            }
+        } else if (members.length == 1) { // S'il n'y a qu'un seul element, on l'assigne au cluster courant.
+            this.element = splitter.getSequences(members).get(0);
+        } else if (members.length > 2) {
             this.subClusters.add(new ClusterOfSequencesBis());
             this.subClusters.add(new ClusterOfSequencesBis());
-            this.subClusters.get(0).clusterizeDivisive(tmp);
-            this.subClusters.get(1).clusterizeDivisive(tmp2);
+            return splitter.split(members);
         }
+        return new int[0][];
     }
 
     public static void main(String[] args) {
@@ -272,6 +454,13 @@ public class ClusterOfSequencesBis {
         System.out.println("Newick de biocluster clustierized de façon agglomerative : " + bioCluster.getNewick());
         System.out.println("Temps d'exécution : " + (t2 - t));
 
+        ClusterOfSequencesBis bioCluster3 = new ClusterOfSequencesBis();
+        t = System.nanoTime();
+        bioCluster3.clusterizeMatrix(listSeq, DistanceFunction.SEQUENCE, 2);
+        t2 = System.nanoTime();
+        System.out.println("Newick de biocluster clustierized avec matrice de distances : " + bioCluster3.getNewick());
+        System.out.println("Temps d'exécution : " + (t2 - t));
+
         t = System.nanoTime();
         bioCluster2.clusterizeDivisive(listSeq);
         t2 = System.nanoTime();
@@ -0,0 +1,443 @@
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Dendrogramme stocke dans des tableaux paralleles de types primitifs, comme la matrice de liaison de SciPy : les n
+ * feuilles portent les numeros 0 a n - 1, et la k-ieme fusion cree le noeud n + k, dont on garde le fils gauche, le
+ * fils droit, la hauteur et le nombre de feuilles. Contrairement a ClusterOfSequences, une fusion ne copie aucune
+ * liste : les sequences d'un sous arbre sont retrouvees a la demande.
+ */
+public class Dendrogram {
+
+    private List<? extends Sequence> leaves;
+    private int[] left;
+    private int[] right;
+    private double[] heights;
+    private int[] sizes;
+    private int nbMerges;
+
+    /**
+     * Construit un dendrogramme sans fusion sur une liste de sequences.
+     *
+     * @param leaves sequences, l'indice d'une sequence dans la liste est son numero de feuille
+     */
+    public Dendrogram(List<? extends Sequence> leaves) {
+        this.leaves = leaves;
+        int capacity = Math.max(0, leaves.size() - 1);
+        this.left = new int[capacity];
+        this.right = new int[capacity];
+        this.heights = new double[capacity];
+        this.sizes = new int[capacity];
+        this.nbMerges = 0;
+    }
+
+    /**
+     * Clusterise les sequences au lien moyen d'apres une matrice de distances, avec le meme ordre de fusion et les
+     * memes regles d'egalite que ClusterOfSequences.clusterizeMatrix(). La derniere fusion garde l'ordre des deux
+     * derniers clusters, qui sont les deux sous clusters de ClusterOfSequences. La matrice est modifiee.
+     *
+     * @param elements sequences
+     * @param dist     matrice des distances, la case (i, j) correspond aux sequences i et j
+     * @return dendrogramme complet
+     */
+    public static Dendrogram clusterizeMatrix(List<? extends Sequence> elements, DistanceMatrix dist) {
+        return clusterizeMatrix(elements, dist, Linkage.AVERAGE);
+    }
+
+    /**
+     * Clusterise les sequences d'apres une matrice de distances en fusionnant a chaque etape les deux clusters les
+     * plus proches selon le critere de liaison, qui peut ne pas etre reductible. Les egalites sont departagees comme
+     * au lien moyen. La matrice est modifiee.
+     *
+     * @param elements sequences
+     * @param dist     matrice des distances, la case (i, j) correspond aux sequences i et j
+     * @param linkage  critere de liaison
+     * @return dendrogramme complet
+     */
+    public static Dendrogram clusterizeMatrix(List<? extends Sequence> elements, DistanceMatrix dist,
+                                              Linkage linkage) {
+        int n = elements.size();
+        Dendrogram dendrogram = new Dendrogram(elements);
+        // nodes[i] est le noeud du cluster range dans la case i de la matrice.
+        int[] nodes = new int[n];
+        // order contient les cases des clusters actifs dans le meme ordre que la liste de sous clusters de
+        // clusterize(), ce qui permet de departager les egalites de la meme façon.
+        int[] order = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            nodes[i] = i;
+            order[i] = i;
+        }
+
+        int count = n;
+        while (count > 2) {
+            // clusterize() garde la derniere paire ordonnee (cl1, cl2) de distance minimale : c'est celle dont
+            // l'indice de cl1 est le plus grand, puis celui de cl2.
+            int p = -1;
+            int q = -1;
+            double distMin = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < count; i++) {
+                for (int j = i + 1; j < count; j++) {
+                    double d = dist.get(order[i], order[j]);
+                    if (d < distMin || (d == distMin && j >= p)) {
+                        distMin = d;
+                        p = j;
+                        q = i;
+                    }
+                }
+            }
+
+            int a = order[p];
+            int b = order[q];
+            int sizeA = dendrogram.getSize(nodes[a]);
+            int sizeB = dendrogram.getSize(nodes[b]);
+            for (int k = 0; k < count; k++) {
+                int c = order[k];
+                if (c != a && c != b) {
+                    dist.set(a, c, linkage.update(dist.get(a, c), dist.get(b, c), distMin,
+                            sizeA, sizeB, dendrogram.getSize(nodes[c])));
+                }
+            }
+            nodes[a] = dendrogram.merge(nodes[a], nodes[b], distMin);
+
+            // On retire les deux clusters fusionnes de l'ordre et on ajoute le nouveau a la fin.
+            int w = 0;
+            for (int k = 0; k < count; k++) {
+                if (order[k] != a && order[k] != b) {
+                    order[w++] = order[k];
+                }
+            }
+            order[w] = a;
+            count--;
+        }
+
+        if (count == 2) {
+            dendrogram.merge(nodes[order[0]], nodes[order[1]], dist.get(order[0], order[1]));
+        }
+        return dendrogram;
+    }
+
+    /**
+     * Clusterise les sequences avec la chaine des plus proches voisins, comme ClusterOfSequences.clusterizeNNChain().
+     * La derniere fusion garde les deux derniers clusters dans l'ordre de leurs cases. La matrice est modifiee.
+     *
+     * @param elements sequences
+     * @param dist     matrice des distances, la case (i, j) correspond aux sequences i et j
+     * @param linkage  critere de liaison, qui doit etre reductible
+     * @return dendrogramme complet
+     */
+    public static Dendrogram clusterizeNNChain(List<? extends Sequence> elements, DistanceMatrix dist,
+                                               Linkage linkage) {
+        if (!linkage.isReducible()) {
+            throw new IllegalArgumentException("Le critere " + linkage + " n'est pas reductible.");
+        }
+
+        int n = elements.size();
+        Dendrogram dendrogram = new Dendrogram(elements);
+        // nodes[i] est le noeud du cluster range dans la case i de la matrice, -1 si la case est libre.
+        int[] nodes = new int[n];
+        int[] chain = new int[n];
+        int chainLength = 0;
+
+        for (int i = 0; i < n; i++) {
+            nodes[i] = i;
+        }
+
+        int remaining = n;
+        while (remaining > 2) {
+            if (chainLength == 0) {
+                int first = 0;
+                while (nodes[first] < 0) {
+                    first++;
+                }
+                chain[chainLength++] = first;
+            }
+
+            // On prolonge la chaine jusqu'a trouver deux plus proches voisins reciproques.
+            int x;
+            int y;
+            double distMin;
+            while (true) {
+                x = chain[chainLength - 1];
+                // En cas d'egalite, on garde le precedent de la chaine pour ne pas boucler.
+                y = chainLength > 1 ? chain[chainLength - 2] : -1;
+                distMin = y >= 0 ? dist.get(x, y) : Double.POSITIVE_INFINITY;
+                for (int k = 0; k < n; k++) {
+                    if (k != x && nodes[k] >= 0) {
+                        double d = dist.get(x, k);
+                        if (d < distMin) {
+                            distMin = d;
+                            y = k;
+                        }
+                    }
+                }
+                if (chainLength > 1 && y == chain[chainLength - 2]) {
+                    break;
+                }
+                chain[chainLength++] = y;
+            }
+            chainLength -= 2;
+
+            // Le nouveau cluster prend la place de y.
+            int sizeX = dendrogram.getSize(nodes[x]);
+            int sizeY = dendrogram.getSize(nodes[y]);
+            for (int k = 0; k < n; k++) {
+                if (k != x && k != y && nodes[k] >= 0) {
+                    dist.set(y, k, linkage.update(dist.get(x, k), dist.get(y, k), distMin, sizeX, sizeY,
+                            dendrogram.getSize(nodes[k])));
+                }
+            }
+            nodes[y] = dendrogram.merge(nodes[x], nodes[y], distMin);
+            nodes[x] = -1;
+            remaining--;
+        }
+
+        if (remaining == 2) {
+            int a = 0;
+            while (nodes[a] < 0) {
+                a++;
+            }
+            int b = a + 1;
+            while (nodes[b] < 0) {
+                b++;
+            }
+            dendrogram.merge(nodes[a], nodes[b], dist.get(a, b));
+        }
+        return dendrogram;
+    }
+
+    /**
+     * Fusionne deux noeuds qui n'ont pas encore ete fusionnes.
+     *
+     * @param a      fils gauche
+     * @param b      fils droit
+     * @param height distance de fusion
+     * @return numero du nouveau noeud
+     */
+    public int merge(int a, int b, double height) {
+        if (this.nbMerges == this.left.length) {
+            throw new IllegalStateException("Toutes les feuilles sont deja fusionnees.");
+        }
+        if (a == b || a < 0 || b < 0 || a >= this.getNodeCount() || b >= this.getNodeCount()) {
+            throw new IllegalArgumentException("Noeuds invalides : " + a + ", " + b);
+        }
+        this.left[this.nbMerges] = a;
+        this.right[this.nbMerges] = b;
+        this.heights[this.nbMerges] = height;
+        this.sizes[this.nbMerges] = this.getSize(a) + this.getSize(b);
+        return this.leaves.size() + this.nbMerges++;
+    }
+
+    /**
+     * Renvoie le nombre de feuilles.
+     *
+     * @return nombre de sequences
+     */
+    public int getLeafCount() {
+        return this.leaves.size();
+    }
+
+    /**
+     * Renvoie le nombre de fusions deja faites.
+     *
+     * @return nombre de fusions
+     */
+    public int getMergeCount() {
+        return this.nbMerges;
+    }
+
+    /**
+     * Renvoie le nombre de noeuds, feuilles comprises.
+     *
+     * @return nombre de noeuds
+     */
+    public int getNodeCount() {
+        return this.leaves.size() + this.nbMerges;
+    }
+
+    /**
+     * Indique si un noeud est une feuille.
+     *
+     * @param node numero du noeud
+     * @return vrai pour une feuille
+     */
+    public boolean isLeaf(int node) {
+        return node < this.leaves.size();
+    }
+
+    /**
+     * Renvoie la sequence d'une feuille.
+     *
+     * @param leaf numero de la feuille
+     * @return sequence
+     */
+    public Sequence getLeaf(int leaf) {
+        return this.leaves.get(leaf);
+    }
+
+    /**
+     * Renvoie le fils gauche d'un noeud interne.
+     *
+     * @param node numero du noeud
+     * @return numero du fils gauche
+     */
+    public int getLeft(int node) {
+        return this.left[node - this.leaves.size()];
+    }
+
+    /**
+     * Renvoie le fils droit d'un noeud interne.
+     *
+     * @param node numero du noeud
+     * @return numero du fils droit
+     */
+    public int getRight(int node) {
+        return this.right[node - this.leaves.size()];
+    }
+
+    /**
+     * Renvoie la hauteur d'un noeud.
+     *
+     * @param node numero du noeud
+     * @return distance de fusion, 0 pour une feuille
+     */
+    public double getHeight(int node) {
+        return this.isLeaf(node) ? 0 : this.heights[node - this.leaves.size()];
+    }
+
+    /**
+     * Renvoie le nombre de feuilles d'un sous arbre.
+     *
+     * @param node numero du noeud
+     * @return nombre de feuilles sous le noeud
+     */
+    public int getSize(int node) {
+        return this.isLeaf(node) ? 1 : this.sizes[node - this.leaves.size()];
+    }
+
+    /**
+     * Renvoie les noeuds qui n'ont pas encore ete fusionnes, par numero croissant. Un dendrogramme complet n'a qu'une
+     * racine, le dernier noeud.
+     *
+     * @return racines
+     */
+    public int[] getRoots() {
+        boolean[] merged = new boolean[this.getNodeCount()];
+        for (int k = 0; k < this.nbMerges; k++) {
+            merged[this.left[k]] = true;
+            merged[this.right[k]] = true;
+        }
+        int nbRoots = 0;
+        for (boolean m : merged) {
+            if (!m) {
+                nbRoots++;
+            }
+        }
+        int[] roots = new int[nbRoots];
+        int r = 0;
+        for (int node = 0; node < merged.length; node++) {
+            if (!merged[node]) {
+                roots[r++] = node;
+            }
+        }
+        return roots;
+    }
+
+    /**
+     * Renvoie les numeros des feuilles d'un sous arbre, de gauche a droite, en parcourant l'arbre avec une pile.
+     *
+     * @param node numero du noeud
+     * @return feuilles sous le noeud
+     */
+    public int[] getMemberIndices(int node) {
+        int[] members = new int[this.getSize(node)];
+        int[] stack = new int[16];
+        int top = 0;
+        int m = 0;
+        stack[top++] = node;
+
+        while (top > 0) {
+            int current = stack[--top];
+            if (this.isLeaf(current)) {
+                members[m++] = current;
+            } else {
+                if (top + 2 > stack.length) {
+                    stack = Arrays.copyOf(stack, 2 * stack.length);
+                }
+                stack[top++] = this.getRight(current);
+                stack[top++] = this.getLeft(current);
+            }
+        }
+        return members;
+    }
+
+    /**
+     * Renvoie une vue en lecture seule sur les sequences d'un sous arbre, de gauche a droite.
+     *
+     * @param node numero du noeud
+     * @return sequences sous le noeud
+     */
+    public List<Sequence> getMembers(int node) {
+        int[] members = this.getMemberIndices(node);
+        return new AbstractList<Sequence>() {
+            @Override
+            public Sequence get(int index) {
+                return leaves.get(members[index]);
+            }
+
+            @Override
+            public int size() {
+                return members.length;
+            }
+        };
+    }
+
+    /**
+     * Renvoie la matrice de liaison au format de SciPy : une ligne par fusion, contenant le fils gauche, le fils
+     * droit, la hauteur et le nombre de feuilles.
+     *
+     * @return matrice de liaison de getMergeCount() lignes et 4 colonnes
+     */
+    public double[][] toLinkageMatrix() {
+        double[][] matrix = new double[this.nbMerges][];
+        for (int k = 0; k < this.nbMerges; k++) {
+            matrix[k] = new double[]{this.left[k], this.right[k], this.heights[k], this.sizes[k]};
+        }
+        return matrix;
+    }
+
+    /**
+     * Renvoie le dendrogramme au format Newick, sans longueurs de branches. Pour obtenir exactement la sortie de
+     * ClusterOfSequences.getNewick(), passer par new ClusterOfSequences(dendrogram).
+     *
+     * @return String au format Newick
+     */
+    public String getNewick() {
+        return new NewickWriter().toString(this);
+    }
+
+    public static void main(String[] args) {
+        ArrayList<Sequence> listSeq = new ArrayList<>();
+        listSeq.add(new Sequence("ATTACG"));
+        listSeq.add(new Sequence("ATATCG"));
+        listSeq.add(new Sequence("ACCCCG"));
+        listSeq.add(new Sequence("GCCGAG"));
+        listSeq.add(new Sequence("TCCCCG"));
+
+        Dendrogram dendrogram = Dendrogram.clusterizeMatrix(listSeq, new DistanceMatrix(listSeq));
+        for (double[] row : dendrogram.toLinkageMatrix()) {
+            System.out.println(Arrays.toString(row));
+        }
+        int root = dendrogram.getRoots()[0];
+        System.out.println("Sequences sous le fils gauche de la racine : " + dendrogram.getMembers(dendrogram.getLeft(root)));
+        System.out.println("Newick du dendrogramme : " + dendrogram.getNewick());
+        System.out.println("Newick avec longueurs de branches : " + new NewickWriter(true).toString(dendrogram));
+
+        ClusterOfSequences cluster = new ClusterOfSequences(listSeq);
+        cluster.clusterizeMatrix();
+        System.out.println("Newick de ClusterOfSequences : " + cluster.getNewick());
+        System.out.println("Newick de l'adaptateur : " + new ClusterOfSequences(dendrogram).getNewick());
+    }
+}
@@ -0,0 +1,410 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache persistant des distances entre sequences, d'une execution a l'autre. Une distance est reperee par le contenu
+ * des deux sequences, resume par une empreinte de 64 bits, et par le nom de la metrique et de ses parametres : les
+ * memes sequences relues le lendemain retrouvent leurs distances, quel que soit leur ordre dans la liste.
+ * Le fichier contient des entrees de 32 octets (metrique, empreintes des deux sequences, distance) triees, projetees
+ * en memoire et cherchees par dichotomie. Les entrees lues recemment dans le fichier sont gardees dans un LRU en
+ * memoire, decoupe en LRU_STRIPES parties verrouillees separement pour que les threads d'un DistanceMatrixBuilder ne
+ * s'attendent pas les uns les autres. Les distances nouvelles s'accumulent en memoire et sont fusionnees dans le
+ * fichier par flush() ou close().
+ */
+public class DistanceCache implements Closeable {
+
+    /**
+     * Nombre d'entrees gardees par defaut dans le LRU en memoire.
+     */
+    public static final int DEFAULT_LRU_CAPACITY = 1 << 16;
+
+    /**
+     * Nombre de parties du LRU, chacune gardant une part egale de sa capacite.
+     */
+    public static final int LRU_STRIPES = 16;
+
+    // Une entree et l'en-tete font 32 octets : aucune entree n'est a cheval sur deux segments.
+    private static final int ENTRY_SIZE = 32;
+    private static final long MAGIC = 0x4443414348453031L;
+
+    private File path;
+    private MappedByteBuffer[] segments;
+    private long nbStored;
+    private ArrayList<Map<Key, Double>> lru;
+    private Map<Key, Double> pending;
+    private AtomicLong nbComputed;
+
+    /**
+     * Ouvre un cache avec un LRU de DEFAULT_LRU_CAPACITY entrees.
+     *
+     * @param path fichier du cache, cree s'il n'existe pas
+     * @throws IOException si le fichier ne peut pas etre lu
+     */
+    public DistanceCache(File path) throws IOException {
+        this(path, DEFAULT_LRU_CAPACITY);
+    }
+
+    /**
+     * Ouvre un cache.
+     *
+     * @param path        fichier du cache, cree s'il n'existe pas
+     * @param lruCapacity nombre d'entrees gardees dans le LRU en memoire
+     * @throws IOException si le fichier ne peut pas etre lu
+     */
+    public DistanceCache(File path, int lruCapacity) throws IOException {
+        this.path = path;
+        int stripeCapacity = Math.max(1, lruCapacity / LRU_STRIPES);
+        this.lru = new ArrayList<>(LRU_STRIPES);
+        for (int i = 0; i < LRU_STRIPES; i++) {
+            this.lru.add(new LinkedHashMap<Key, Double>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Double> eldest) {
+                    return this.size() > stripeCapacity;
+                }
+            });
+        }
+        this.pending = new ConcurrentHashMap<>();
+        this.nbComputed = new AtomicLong();
+        this.map();
+    }
+
+    /**
+     * Projette le fichier en memoire.
+     *
+     * @throws IOException si le fichier n'est pas un cache de distances
+     */
+    private void map() throws IOException {
+        this.segments = new MappedByteBuffer[0];
+        this.nbStored = 0;
+        if (!this.path.exists() || this.path.length() == 0) {
+            return;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(this.path, "r")) {
+            long bytes = file.length();
+            if (bytes % ENTRY_SIZE != 0 || file.readLong() != MAGIC) {
+                throw new IOException(this.path + " n'est pas un cache de distances.");
+            }
+            FileChannel channel = file.getChannel();
+            this.segments = new MappedByteBuffer[(int) ((bytes + MappedDistanceMatrix.SEGMENT_SIZE - 1)
+                    / MappedDistanceMatrix.SEGMENT_SIZE)];
+            for (int s = 0; s < this.segments.length; s++) {
+                long start = s * MappedDistanceMatrix.SEGMENT_SIZE;
+                this.segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(MappedDistanceMatrix.SEGMENT_SIZE, bytes - start));
+            }
+            this.nbStored = bytes / ENTRY_SIZE - 1;
+        }
+    }
+
+    /**
+     * Renvoie une fonction de distance qui cherche d'abord dans le cache et n'appelle distance que pour les paires
+     * absentes. L'empreinte de chaque sequence n'est calculee qu'une fois, puis gardee par la fonction. Elle peut etre
+     * appelee depuis plusieurs threads.
+     *
+     * @param metric   nom de la metrique et de ses parametres, par exemple "bandedAlignment(32, 0.5)" : deux
+     *                 fonctions de meme nom doivent donner les memes distances
+     * @param distance fonction de distance entre deux sequences
+     * @return fonction de distance utilisant le cache
+     */
+    public DistanceFunction wrap(String metric, DistanceFunction distance) {
+        long metricHash = hash(metric);
+        Map<Sequence, Long> fingerprints = new ConcurrentHashMap<>();
+        return (s1, s2) -> {
+            long h1 = fingerprints.computeIfAbsent(s1, s -> hash(s.getSeq()));
+            long h2 = fingerprints.computeIfAbsent(s2, s -> hash(s.getSeq()));
+            Key key = new Key(metricHash, Math.min(h1, h2), Math.max(h1, h2));
+
+            Map<Key, Double> stripe = this.lru.get(Math.floorMod(key.hashCode(), LRU_STRIPES));
+            Double d;
+            synchronized (stripe) {
+                d = stripe.get(key);
+            }
+            if (d != null) {
+                return d;
+            }
+            d = this.pending.get(key);
+            if (d != null) {
+                return d;
+            }
+            d = this.lookup(key);
+            if (d != null) {
+                synchronized (stripe) {
+                    stripe.put(key, d);
+                }
+                return d;
+            }
+            // Une distance nouvelle reste dans pending jusqu'au prochain flush() : inutile de la mettre dans le LRU.
+            d = distance.distance(s1, s2);
+            this.nbComputed.incrementAndGet();
+            this.pending.put(key, d);
+            return d;
+        };
+    }
+
+    /**
+     * Cherche une distance dans le fichier par dichotomie.
+     *
+     * @param key cle de la distance
+     * @return distance, null si elle n'est pas dans le fichier
+     */
+    private Double lookup(Key key) {
+        long low = 0;
+        long high = this.nbStored - 1;
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            long offset = (mid + 1) * ENTRY_SIZE;
+            MappedByteBuffer segment = this.segments[(int) (offset / MappedDistanceMatrix.SEGMENT_SIZE)];
+            int position = (int) (offset % MappedDistanceMatrix.SEGMENT_SIZE);
+            int cmp = key.compareTo(segment.getLong(position), segment.getLong(position + 8),
+                    segment.getLong(position + 16));
+            if (cmp > 0) {
+                low = mid + 1;
+            } else if (cmp < 0) {
+                high = mid - 1;
+            } else {
+                return segment.getDouble(position + 24);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Renvoie le nombre de distances calculees, faute d'etre dans le cache, depuis l'ouverture.
+     *
+     * @return nombre de distances calculees
+     */
+    public long getComputedCount() {
+        return this.nbComputed.get();
+    }
+
+    /**
+     * Renvoie le nombre de distances du cache, fichier et distances nouvelles compris.
+     *
+     * @return nombre de distances
+     */
+    public long size() {
+        return this.nbStored + this.pending.size();
+    }
+
+    /**
+     * Fusionne les distances nouvelles dans le fichier. Le fichier fusionne est ecrit a cote puis renomme, si bien
+     * qu'une execution interrompue laisse l'ancien fichier intact. Ne doit pas etre appele pendant un calcul.
+     * Les entrees de l'ancien fichier sont relues par un flux ferme avant le renommage, et ses segments projetes sont
+     * abandonnes : sous Windows, un fichier encore projete ne peut pas etre remplace.
+     *
+     * @throws IOException si le fichier ne peut pas etre ecrit
+     */
+    public void flush() throws IOException {
+        if (this.pending.isEmpty()) {
+            return;
+        }
+        Key[] added = this.pending.keySet().toArray(new Key[0]);
+        Arrays.sort(added);
+        long nbOld = this.nbStored;
+        this.segments = new MappedByteBuffer[0];
+        this.nbStored = 0;
+
+        File tmp = new File(this.path.getPath() + ".tmp");
+        try {
+            try (DataInputStream in = nbOld == 0 ? null
+                    : new DataInputStream(new BufferedInputStream(new FileInputStream(this.path), 1 << 16));
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp),
+                         1 << 16))) {
+                out.writeLong(MAGIC);
+                out.writeLong(0);
+                out.writeLong(0);
+                out.writeLong(0);
+                if (in != null) {
+                    in.skipNBytes(ENTRY_SIZE);
+                }
+
+                // Fusion des entrees triees du fichier et des distances nouvelles triees.
+                long[] entry = new long[4];
+                boolean read = false;
+                long i = 0;
+                int j = 0;
+                while (i < nbOld || j < added.length) {
+                    if (i < nbOld && !read) {
+                        for (int b = 0; b < 4; b++) {
+                            entry[b] = in.readLong();
+                        }
+                        read = true;
+                    }
+                    if (j == added.length || (read && added[j].compareTo(entry[0], entry[1], entry[2]) > 0)) {
+                        for (int b = 0; b < 4; b++) {
+                            out.writeLong(entry[b]);
+                        }
+                        read = false;
+                        i++;
+                    } else {
+                        Key key = added[j++];
+                        out.writeLong(key.metric);
+                        out.writeLong(key.first);
+                        out.writeLong(key.second);
+                        out.writeDouble(this.pending.get(key));
+                    }
+                }
+            }
+
+            try {
+                Files.move(tmp.toPath(), this.path.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (FileSystemException e) {
+                // Les segments abandonnes ne sont liberes qu'au passage du ramasse-miettes.
+                System.gc();
+                Files.move(tmp.toPath(), this.path.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            this.pending.clear();
+        } finally {
+            this.map();
+        }
+    }
+
+    /**
+     * Fusionne les distances nouvelles dans le fichier.
+     *
+     * @throws IOException si le fichier ne peut pas etre ecrit
+     */
+    @Override
+    public void close() throws IOException {
+        this.flush();
+    }
+
+    /**
+     * Calcule l'empreinte de 64 bits d'une chaine : FNV-1a, suivi du finaliseur de MurmurHash3 pour repartir les bits.
+     *
+     * @param s chaine
+     * @return empreinte
+     */
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Cle d'une distance : empreinte de la metrique et empreintes des deux sequences, la plus petite en premier.
+     */
+    private static class Key implements Comparable<Key> {
+
+        private final long metric;
+        private final long first;
+        private final long second;
+
+        Key(long metric, long first, long second) {
+            this.metric = metric;
+            this.first = first;
+            this.second = second;
+        }
+
+        /**
+         * Compare la cle a celle d'une entree du fichier.
+         *
+         * @param metric empreinte de la metrique de l'entree
+         * @param first  premiere empreinte de l'entree
+         * @param second deuxieme empreinte de l'entree
+         * @return negatif, nul ou positif selon que la cle est avant, egale ou apres l'entree
+         */
+        int compareTo(long metric, long first, long second) {
+            int cmp = Long.compare(this.metric, metric);
+            if (cmp == 0) {
+                cmp = Long.compare(this.first, first);
+            }
+            if (cmp == 0) {
+                cmp = Long.compare(this.second, second);
+            }
+            return cmp;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            return this.compareTo(other.metric, other.first, other.second);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return this.metric == other.metric && this.first == other.first && this.second == other.second;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(this.metric ^ this.first * 31 ^ this.second * 961);
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            ArrayList<Sequence> data = new ArrayList<>();
+            for (File f : new File(System.getProperty("user.dir") + "/data").listFiles()) {
+                if (f.getName().endsWith("_sequence.fa")) {
+                    data.add(new SequenceLabeled(f, f.getName().replace("_sequence.fa", "")));
+                }
+            }
+            File path = File.createTempFile("distances", ".cache");
+            path.delete();
+            path.deleteOnExit();
+
+            // Premiere execution : toutes les distances sont calculees.
+            int nbThreads = Runtime.getRuntime().availableProcessors();
+            try (DistanceCache cache = new DistanceCache(path)) {
+                double t = System.nanoTime();
+                new DistanceMatrixBuilder(cache.wrap("AlignmentMW", DistanceFunction.ALIGNMENT_MW), nbThreads)
+                        .build(data);
+                double t2 = System.nanoTime();
+                System.out.println("Premiere execution : " + cache.getComputedCount() + " distances calculees en "
+                        + (t2 - t) / 1e6 + " ms");
+            }
+
+            // Le lendemain, les memes sequences relues dans un autre ordre et une nouvelle.
+            ArrayList<Sequence> again = new ArrayList<>();
+            for (int i = data.size() - 1; i >= 0; i--) {
+                again.add(new Sequence(data.get(i).getSeq()));
+            }
+            again.add(new Sequence(data.get(0).getSeq().substring(10)));
+            try (DistanceCache cache = new DistanceCache(path)) {
+                double t = System.nanoTime();
+                DistanceMatrix matrix = new DistanceMatrixBuilder(cache.wrap("AlignmentMW",
+                        DistanceFunction.ALIGNMENT_MW), nbThreads).build(again);
+                double t2 = System.nanoTime();
+                System.out.println("Deuxieme execution : " + cache.getComputedCount() + " distances calculees en "
+                        + (t2 - t) / 1e6 + " ms, distance conservee "
+                        + (matrix.get(0, 1) == new AlignmentMW(again.get(0), again.get(1)).getDistance()));
+            }
+            System.out.println("Fichier du cache : " + path.length() + " octets");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
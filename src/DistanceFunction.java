@@ -0,0 +1,78 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fonction de distance entre deux sequences, utilisee pour remplir une matrice de distances.
+ */
+public interface DistanceFunction {
+
+    /**
+     * Distance de Sequence.distance().
+     */
+    DistanceFunction SEQUENCE = (s1, s2) -> s1.distance(s2);
+
+    /**
+     * Distance de l'alignement AlignmentMW entre les deux sequences, calculee en memoire lineaire.
+     */
+    DistanceFunction ALIGNMENT_MW = (s1, s2) -> new AlignmentMW(s1, s2, true).getDistance();
+
+    /**
+     * Renvoie la distance AlignmentMW.getAlignmentDistance() calculee en bande et en memoire lineaire, abandonnee des
+     * qu'elle ne peut plus etre inferieure au seuil.
+     *
+     * @param bandWidth largeur de la bande, negative pour une bande adaptative
+     * @param cutoff    seuil au dela duquel la distance renvoyee n'est qu'une borne inferieure
+     * @return fonction de distance
+     */
+    static DistanceFunction bandedAlignment(int bandWidth, double cutoff) {
+        return (s1, s2) -> new AlignmentMW(s1, s2, true).getAlignmentDistance(bandWidth, cutoff);
+    }
+
+    /**
+     * Renvoie la distance AlignmentMW.getAlignmentDistance() d'un alignement score avec une matrice de substitution.
+     *
+     * @param scoring matrice de substitution, par exemple BLOSUM65 pour des proteines
+     * @return fonction de distance
+     */
+    static DistanceFunction substitution(ScoringMatrix scoring) {
+        return (s1, s2) -> new AlignmentMW(s1, s2, scoring).getAlignmentDistance();
+    }
+
+    /**
+     * Renvoie la distance de Mash estimee d'apres les esquisses MinHash des deux sequences, sans alignement. L'esquisse
+     * de chaque sequence n'est calculee qu'une fois, puis gardee par la fonction, qui peut etre appelee depuis
+     * plusieurs threads.
+     *
+     * @param k    longueur des k-mers, de 1 a 32
+     * @param size nombre de valeurs de hachage gardees par esquisse
+     * @return fonction de distance
+     */
+    static DistanceFunction minHash(int k, int size) {
+        Map<Sequence, MinHashSketch> sketches = new ConcurrentHashMap<>();
+        return (s1, s2) -> sketches.computeIfAbsent(s1, s -> new MinHashSketch(s, k, size))
+                .distance(sketches.computeIfAbsent(s2, s -> new MinHashSketch(s, k, size)));
+    }
+
+    /**
+     * Renvoie la distance cosinus entre les profils de k-mers des deux sequences, sans alignement. Le profil de
+     * chaque sequence n'est calcule qu'une fois, puis garde par la fonction, qui peut etre appelee depuis plusieurs
+     * threads.
+     *
+     * @param k longueur des k-mers, de 1 a 31
+     * @return fonction de distance
+     */
+    static DistanceFunction kmerCosine(int k) {
+        Map<Sequence, KmerProfile> profiles = new ConcurrentHashMap<>();
+        return (s1, s2) -> profiles.computeIfAbsent(s1, s -> new KmerProfile(s, k))
+                .distance(profiles.computeIfAbsent(s2, s -> new KmerProfile(s, k)));
+    }
+
+    /**
+     * Calcule la distance entre deux sequences.
+     *
+     * @param s1 premiere sequence
+     * @param s2 deuxieme sequence
+     * @return distance entre les deux sequences
+     */
+    double distance(Sequence s1, Sequence s2);
+}
@@ -0,0 +1,152 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Matrice de distances symetrique stockee sous forme condensee : seul le triangle superieur strict est conserve,
+ * ligne par ligne, dans un tableau de double (meme disposition que scipy.spatial.distance.squareform).
+ * Chaque distance entre deux sequences n'est donc calculee qu'une seule fois.
+ */
+public class DistanceMatrix {
+
+    private int size;
+    private double[] values;
+
+    /**
+     * Construit une matrice de taille size dont toutes les distances valent 0.
+     *
+     * @param size nombre de sequences
+     */
+    public DistanceMatrix(int size) {
+        this(size, new double[heapLength(size)]);
+    }
+
+    /**
+     * Construit une matrice de taille size dont les distances sont rangees dans un tableau donne. Une classe fille
+     * qui range les distances ailleurs redefinit get() et set() et passe null.
+     *
+     * @param size   nombre de sequences
+     * @param values tableau condense de length(size) cases, ou null
+     */
+    protected DistanceMatrix(int size, double[] values) {
+        this.size = size;
+        this.values = values;
+    }
+
+    /**
+     * Construit la matrice des distances entre toutes les sequences de la liste d'apres Sequence.distance().
+     *
+     * @param elements liste de sequences, l'indice d'une sequence dans la liste est son indice dans la matrice
+     */
+    public DistanceMatrix(List<? extends Sequence> elements) {
+        this(elements.size());
+
+        int k = 0;
+        for (int i = 0; i < this.size; i++) {
+            Sequence seq = elements.get(i);
+            for (int j = i + 1; j < this.size; j++) {
+                this.values[k++] = seq.distance(elements.get(j));
+            }
+        }
+    }
+
+    /**
+     * Renvoie le nombre de cases du triangle superieur d'une matrice de taille n.
+     *
+     * @param n nombre de sequences
+     * @return n * (n - 1) / 2
+     */
+    public static long length(int n) {
+        return (long) n * (n - 1) / 2;
+    }
+
+    /**
+     * Indique si la matrice de taille n peut etre rangee sur le tas, dans un seul tableau.
+     *
+     * @param n nombre de sequences
+     * @return vrai jusqu'a 65 536 sequences
+     */
+    public static boolean fitsOnHeap(int n) {
+        return length(n) <= Integer.MAX_VALUE - 8;
+    }
+
+    /**
+     * Renvoie le nombre de cases du tableau condense d'une matrice de taille n rangee sur le tas.
+     *
+     * @param n nombre de sequences
+     * @return n * (n - 1) / 2
+     * @throws IllegalArgumentException si le tableau depasserait la taille maximale d'un tableau Java, soit un peu
+     *                                  plus de 65 000 sequences : il faut alors utiliser MappedDistanceMatrix
+     */
+    private static int heapLength(int n) {
+        if (!fitsOnHeap(n)) {
+            throw new IllegalArgumentException("Une matrice de " + n + " sequences ne tient pas dans un tableau, "
+                    + "utiliser MappedDistanceMatrix.");
+        }
+        return (int) length(n);
+    }
+
+    /**
+     * Renvoie l'indice dans le tableau condense de la case (i, j), avec i < j.
+     *
+     * @param i ligne
+     * @param j colonne
+     * @return indice dans le tableau condense
+     */
+    protected long index(int i, int j) {
+        return (long) this.size * i - (long) i * (i + 1) / 2 + (j - i - 1);
+    }
+
+    /**
+     * Renvoie le nombre de sequences de la matrice.
+     *
+     * @return nombre de sequences
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Renvoie la distance entre les sequences i et j.
+     *
+     * @param i indice de la premiere sequence
+     * @param j indice de la deuxieme sequence
+     * @return distance, 0 si i == j
+     */
+    public double get(int i, int j) {
+        if (i == j) {
+            return 0;
+        }
+        return i < j ? this.values[(int) this.index(i, j)] : this.values[(int) this.index(j, i)];
+    }
+
+    /**
+     * Modifie la distance entre les sequences i et j (i != j).
+     *
+     * @param i indice de la premiere sequence
+     * @param j indice de la deuxieme sequence
+     * @param d nouvelle distance
+     */
+    public void set(int i, int j, double d) {
+        if (i < j) {
+            this.values[(int) this.index(i, j)] = d;
+        } else {
+            this.values[(int) this.index(j, i)] = d;
+        }
+    }
+
+    public static void main(String[] args) {
+        ArrayList<Sequence> listSeq = new ArrayList<>(4);
+        listSeq.add(new Sequence("ATTACG"));
+        listSeq.add(new Sequence("ATATCG"));
+        listSeq.add(new Sequence("ACCCCG"));
+        listSeq.add(new Sequence("GCCGAG"));
+
+        DistanceMatrix matrix = new DistanceMatrix(listSeq);
+        for (int i = 0; i < matrix.size(); i++) {
+            for (int j = 0; j < matrix.size(); j++) {
+                System.out.print(String.format("%.3f ", matrix.get(i, j)));
+            }
+            System.out.println();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Calcule en parallele la matrice des distances entre toutes les sequences d'une liste. Le triangle superieur est
+ * decoupe en tuiles carrees de quelques dizaines de sequences, pour que les sequences d'une tuile restent dans le
+ * cache, et les tuiles sont reparties sur un ForkJoinPool qui equilibre la charge par vol de taches.
+ */
+public class DistanceMatrixBuilder {
+
+    /**
+     * Nombre de sequences par cote de tuile par defaut.
+     */
+    public static final int DEFAULT_TILE_SIZE = 32;
+
+    private DistanceFunction distance;
+    private int nbThreads;
+    private int tileSize;
+
+    /**
+     * Construit un calculateur utilisant Sequence.distance() et tous les processeurs disponibles.
+     */
+    public DistanceMatrixBuilder() {
+        this(DistanceFunction.SEQUENCE);
+    }
+
+    /**
+     * Construit un calculateur utilisant tous les processeurs disponibles.
+     *
+     * @param distance fonction de distance entre deux sequences
+     */
+    public DistanceMatrixBuilder(DistanceFunction distance) {
+        this(distance, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Construit un calculateur utilisant nbThreads threads.
+     *
+     * @param distance  fonction de distance entre deux sequences
+     * @param nbThreads nombre de threads du ForkJoinPool
+     */
+    public DistanceMatrixBuilder(DistanceFunction distance, int nbThreads) {
+        this(distance, nbThreads, DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * Construit un calculateur utilisant nbThreads threads et des tuiles de tileSize sequences de cote.
+     *
+     * @param distance  fonction de distance entre deux sequences
+     * @param nbThreads nombre de threads du ForkJoinPool
+     * @param tileSize  nombre de sequences par cote de tuile
+     */
+    public DistanceMatrixBuilder(DistanceFunction distance, int nbThreads, int tileSize) {
+        if (nbThreads < 1 || tileSize < 1) {
+            throw new IllegalArgumentException("Le nombre de threads et la taille des tuiles doivent etre positifs.");
+        }
+        this.distance = distance;
+        this.nbThreads = nbThreads;
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Calcule la matrice des distances entre toutes les sequences de la liste.
+     *
+     * @param elements liste de sequences, l'indice d'une sequence dans la liste est son indice dans la matrice
+     * @return matrice des distances
+     */
+    public DistanceMatrix build(List<? extends Sequence> elements) {
+        DistanceMatrix matrix = new DistanceMatrix(elements.size());
+        this.fill(elements, matrix);
+        return matrix;
+    }
+
+    /**
+     * Remplit une matrice deja allouee avec les distances entre toutes les sequences de la liste.
+     *
+     * @param elements liste de sequences, de meme taille que la matrice
+     * @param matrix   matrice a remplir
+     */
+    public void fill(List<? extends Sequence> elements, DistanceMatrix matrix) {
+        if (elements.size() != matrix.size()) {
+            throw new IllegalArgumentException("La matrice doit avoir autant de lignes que de sequences.");
+        }
+
+        // On numerote les tuiles (bi, bj), bi <= bj, du triangle superieur ligne par ligne, sur un long : au dela
+        // d'environ 1,5 million de sequences, leur nombre depasse celui d'un int.
+        int nbBlocks = (elements.size() + this.tileSize - 1) / this.tileSize;
+        long nbTiles = tileStart(nbBlocks, nbBlocks);
+
+        if (nbTiles == 0) {
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(this.nbThreads);
+        try {
+            pool.invoke(new TileTask(elements, matrix, nbBlocks, 0, nbTiles));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Renvoie le numero de la premiere tuile d'une ligne de tuiles.
+     *
+     * @param nbBlocks nombre de tuiles par cote de la matrice
+     * @param bi       ligne de tuiles
+     * @return numero de la tuile (bi, bi)
+     */
+    private static long tileStart(int nbBlocks, int bi) {
+        return (long) bi * nbBlocks - (long) bi * (bi - 1) / 2;
+    }
+
+    /**
+     * Tache calculant un intervalle de tuiles, divisee en deux tant qu'elle contient plus d'une tuile.
+     */
+    private class TileTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private List<? extends Sequence> elements;
+        private DistanceMatrix matrix;
+        private int nbBlocks;
+        private long from;
+        private long to;
+
+        TileTask(List<? extends Sequence> elements, DistanceMatrix matrix, int nbBlocks, long from, long to) {
+            this.elements = elements;
+            this.matrix = matrix;
+            this.nbBlocks = nbBlocks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from > 1) {
+                long middle = (this.from + this.to) >>> 1;
+                invokeAll(new TileTask(this.elements, this.matrix, this.nbBlocks, this.from, middle),
+                        new TileTask(this.elements, this.matrix, this.nbBlocks, middle, this.to));
+                return;
+            }
+
+            // Ligne de la tuile : la derniere ligne de tuiles commencant au plus a son numero.
+            int low = 0;
+            int high = this.nbBlocks - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (tileStart(this.nbBlocks, mid) <= this.from) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            int bi = low;
+            int bj = bi + (int) (this.from - tileStart(this.nbBlocks, bi));
+
+            int n = this.elements.size();
+            int rowStart = bi * tileSize;
+            int colStart = bj * tileSize;
+            int rowEnd = Math.min(rowStart + tileSize, n);
+            int colEnd = Math.min(colStart + tileSize, n);
+
+            for (int i = rowStart; i < rowEnd; i++) {
+                Sequence seq = this.elements.get(i);
+                for (int j = Math.max(colStart, i + 1); j < colEnd; j++) {
+                    this.matrix.set(i, j, distance.distance(seq, this.elements.get(j)));
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        ArrayList<Sequence> listSeq = new ArrayList<>(5);
+        listSeq.add(new Sequence("ATTACG"));
+        listSeq.add(new Sequence("ATATCG"));
+        listSeq.add(new Sequence("ACCCCG"));
+        listSeq.add(new Sequence("GCCGAG"));
+        listSeq.add(new Sequence("TCCCCG"));
+
+        DistanceMatrix matrix = new DistanceMatrixBuilder(DistanceFunction.SEQUENCE, 4, 2).build(listSeq);
+        for (int i = 0; i < matrix.size(); i++) {
+            for (int j = 0; j < matrix.size(); j++) {
+                System.out.print(String.format("%.3f ", matrix.get(i, j)));
+            }
+            System.out.println();
+        }
+
+        ClusterOfSequences cluster = new ClusterOfSequences(listSeq);
+        cluster.clusterizeMatrix(matrix);
+        System.out.println("Newick clusterise : " + cluster.getNewick());
+    }
+}
@@ -0,0 +1,232 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Decoupe d'un groupe de sequences en deux pour la clusterisation divisive, d'apres une matrice de distances partagee
+ * par toutes les divisions. Un groupe est donne par les indices de ses sequences dans la liste d'elements.
+ * Pour construire la moitie la plus proche, on garde pour chaque sequence restante la somme de ses distances aux
+ * membres deja choisis : ajouter un membre met a jour ces sommes en O(n), au lieu de recalculer le lien moyen du groupe
+ * avec chaque candidat.
+ */
+public class DivisiveSplitter {
+
+    private List<? extends Sequence> elements;
+    private DistanceMatrix dist;
+
+    /**
+     * Construit un decoupeur apres avoir calcule la matrice des distances entre les sequences.
+     *
+     * @param elements liste de sequences
+     */
+    public DivisiveSplitter(List<? extends Sequence> elements) {
+        this(elements, new DistanceMatrix(elements));
+    }
+
+    /**
+     * Construit un decoupeur d'apres une matrice de distances deja calculee, qui n'est pas modifiee.
+     *
+     * @param elements liste de sequences
+     * @param dist     matrice des distances, la case (i, j) correspond aux sequences i et j de la liste d'elements
+     */
+    public DivisiveSplitter(List<? extends Sequence> elements, DistanceMatrix dist) {
+        this.elements = elements;
+        this.dist = dist;
+    }
+
+    /**
+     * Renvoie les indices de toutes les sequences de la liste d'elements.
+     *
+     * @return 0, 1, ..., n - 1
+     */
+    public int[] all() {
+        int[] members = new int[this.elements.size()];
+        for (int i = 0; i < members.length; i++) {
+            members[i] = i;
+        }
+        return members;
+    }
+
+    /**
+     * Renvoie les sequences d'un groupe.
+     *
+     * @param members indices des sequences du groupe
+     * @return sequences, dans l'ordre des indices
+     */
+    public ArrayList<Sequence> getSequences(int[] members) {
+        ArrayList<Sequence> list = new ArrayList<>(members.length);
+        for (int m : members) {
+            list.add(this.elements.get(m));
+        }
+        return list;
+    }
+
+    /**
+     * Divise un groupe d'au moins trois sequences en deux. La premiere moitie est le groupe de taille n / 2 construit
+     * par closest(). Si n est impair et au moins egal a 5, on isole dans le reste la sequence la plus eloignee des
+     * autres, que l'on ajoute a la moitie dont elle est la plus proche en moyenne.
+     *
+     * @param members indices des sequences du groupe
+     * @return les indices des sequences des deux moities
+     */
+    public int[][] split(int[] members) {
+        int[] tmp = this.closest(members, members.length / 2);
+        int[] rest = without(members, tmp);
+
+        if (members.length >= 5 && members.length % 2 == 1) {
+            int[] tmp2 = this.closest(rest, rest.length - 1);
+            int alone = without(rest, tmp2)[0];
+
+            if (this.linkage(tmp, alone) < this.linkage(tmp2, alone)) {
+                tmp = Arrays.copyOf(tmp, tmp.length + 1);
+                tmp[tmp.length - 1] = alone;
+            } else {
+                tmp2 = Arrays.copyOf(tmp2, tmp2.length + 1);
+                tmp2[tmp2.length - 1] = alone;
+            }
+            return new int[][]{tmp, tmp2};
+        }
+        return new int[][]{tmp, rest};
+    }
+
+    /**
+     * Construit un groupe de nb sequences proches parmi celles d'un groupe : on part des deux sequences les plus
+     * proches, puis on ajoute a chaque etape la sequence la plus proche en moyenne des membres deja choisis. En cas
+     * d'egalite, la derniere sequence rencontree l'emporte.
+     *
+     * @param members indices des sequences du groupe, au moins deux
+     * @param nb      nombre de sequences a choisir
+     * @return indices des sequences choisies, dans l'ordre ou elles ont ete choisies
+     */
+    public int[] closest(int[] members, int nb) {
+        int n = members.length;
+        int first = -1;
+        int second = -1;
+        double distMin = Double.POSITIVE_INFINITY;
+
+        // On cherche les deux sequences du groupe les plus proches.
+        for (int a = 0; a < n; a++) {
+            for (int b = 0; b < n; b++) {
+                if (a != b) {
+                    double d = this.dist.get(members[a], members[b]);
+                    if (d <= distMin) {
+                        distMin = d;
+                        first = a;
+                        second = b;
+                    }
+                }
+            }
+        }
+
+        int[] chosen = new int[Math.max(nb, 2)];
+        boolean[] taken = new boolean[n];
+        // sums[k] est la somme des distances entre la sequence members[k] et les sequences deja choisies.
+        double[] sums = new double[n];
+        int count = 0;
+
+        for (int a : new int[]{first, second}) {
+            chosen[count++] = members[a];
+            taken[a] = true;
+            for (int k = 0; k < n; k++) {
+                sums[k] += this.dist.get(members[a], members[k]);
+            }
+        }
+
+        // Tant que le groupe n'est pas a la taille definie, on ajoute la sequence restante la plus proche.
+        while (count < nb) {
+            int best = -1;
+            distMin = Double.POSITIVE_INFINITY;
+            for (int k = 0; k < n; k++) {
+                if (!taken[k]) {
+                    double d = sums[k] / count;
+                    if (d <= distMin) {
+                        distMin = d;
+                        best = k;
+                    }
+                }
+            }
+
+            chosen[count++] = members[best];
+            taken[best] = true;
+            for (int k = 0; k < n; k++) {
+                if (!taken[k]) {
+                    sums[k] += this.dist.get(members[best], members[k]);
+                }
+            }
+        }
+
+        return chosen;
+    }
+
+    /**
+     * Calcule la moyenne des distances entre une sequence et celles d'un groupe.
+     *
+     * @param members indices des sequences du groupe
+     * @param seq     indice de la sequence
+     * @return distance moyenne
+     */
+    private double linkage(int[] members, int seq) {
+        double a = 0;
+        for (int m : members) {
+            a += this.dist.get(m, seq);
+        }
+        return a / members.length;
+    }
+
+    /**
+     * Renvoie les indices d'un groupe qui ne sont pas dans un sous groupe, dans leur ordre.
+     *
+     * @param members indices du groupe
+     * @param removed indices du sous groupe
+     * @return indices restants
+     */
+    private static int[] without(int[] members, int[] removed) {
+        int[] sorted = removed.clone();
+        Arrays.sort(sorted);
+        int[] rest = new int[members.length - removed.length];
+        int k = 0;
+        for (int m : members) {
+            if (Arrays.binarySearch(sorted, m) < 0) {
+                rest[k++] = m;
+            }
+        }
+        return rest;
+    }
+
+    public static void main(String[] args) {
+        ArrayList<Sequence> listSeq = new ArrayList<>();
+        listSeq.add(new Sequence("ATTACG"));
+        listSeq.add(new Sequence("ATATCG"));
+        listSeq.add(new Sequence("ACCCCG"));
+        listSeq.add(new Sequence("GCCGAG"));
+        listSeq.add(new Sequence("TCCCCG"));
+
+        DivisiveSplitter splitter = new DivisiveSplitter(listSeq);
+        int[][] halves = splitter.split(splitter.all());
+        System.out.println("Premiere moitie : " + splitter.getSequences(halves[0]));
+        System.out.println("Seconde moitie : " + splitter.getSequences(halves[1]));
+
+        Random random = new Random(42);
+        ArrayList<Sequence> many = new ArrayList<>();
+        for (int i = 0; i < 4000; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < 50; j++) {
+                sb.append("ACGT".charAt(random.nextInt(4)));
+            }
+            many.add(new Sequence(sb.toString()));
+        }
+        double t = System.nanoTime();
+        ClusterOfSequences cluster = new ClusterOfSequences(many);
+        cluster.clusterizeDivisive();
+        double t2 = System.nanoTime();
+        System.out.println("Clusterisation divisive de " + many.size() + " sequences : " + (t2 - t) / 1e6 + " ms");
+
+        t = System.nanoTime();
+        ClusterOfSequences parallel = new ClusterOfSequences(many);
+        parallel.clusterizeDivisive(Runtime.getRuntime().availableProcessors());
+        t2 = System.nanoTime();
+        System.out.println("Clusterisation divisive parallele : " + (t2 - t) / 1e6 + " ms, meme arbre : "
+                + parallel.getNewick().equals(cluster.getNewick()));
+    }
+}
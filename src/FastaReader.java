@@ -0,0 +1,308 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lecteur de fichiers multi-FASTA renvoyant les enregistrements un par un, sans charger le fichier en memoire. Le
+ * fichier est projete en memoire par fenetres successives a travers un FileChannel, et les residus de chaque
+ * enregistrement sont accumules dans un tampon d'octets reutilise, converti directement dans le format demande.
+ * Le label d'un enregistrement est sa ligne d'en-tete, sans le '>'.
+ */
+public class FastaReader implements Iterator<SequenceLabeled>, Closeable {
+
+    /**
+     * Stockage des residus des sequences lues.
+     */
+    public enum Format {
+        /**
+         * Sequence sous forme de string, comme Utils.readFasta().
+         */
+        STRING,
+        /**
+         * PackedSequence, 2 bits par base.
+         */
+        PACKED,
+        /**
+         * ByteSequence, un octet par residu.
+         */
+        BYTE
+    }
+
+    // Taille des fenetres projetees en memoire.
+    private static final long WINDOW_SIZE = 1L << 28;
+
+    // Taille maximale d'un tableau acceptee par la plupart des JVM.
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private FileChannel channel;
+    private Format format;
+    private long position;
+    private MappedByteBuffer buffer;
+    private byte[] residues;
+    private byte[] header;
+    // En-tete deja lu de l'enregistrement suivant.
+    private String nextLabel;
+    private SequenceLabeled next;
+
+    /**
+     * Ouvre un fichier FASTA dont les sequences seront lues sous forme de string.
+     *
+     * @param f fichier FASTA
+     * @throws FileNotFoundException Si le fichier n'a pas ete trouve.
+     */
+    public FastaReader(File f) throws FileNotFoundException {
+        this(f, Format.STRING);
+    }
+
+    /**
+     * Ouvre un fichier FASTA.
+     *
+     * @param f      fichier FASTA
+     * @param format stockage des residus des sequences lues
+     * @throws FileNotFoundException Si le fichier n'a pas ete trouve.
+     */
+    public FastaReader(File f, Format format) throws FileNotFoundException {
+        this.channel = new FileInputStream(f).getChannel();
+        this.format = format;
+        this.position = 0;
+        this.residues = new byte[1024];
+        this.header = new byte[256];
+    }
+
+    /**
+     * Renvoie les enregistrements d'un fichier FASTA sous forme de Stream, a fermer apres usage pour liberer le
+     * fichier.
+     *
+     * @param f      fichier FASTA
+     * @param format stockage des residus des sequences lues
+     * @return enregistrements du fichier, dans l'ordre
+     * @throws FileNotFoundException Si le fichier n'a pas ete trouve.
+     */
+    public static Stream<SequenceLabeled> stream(File f, Format format) throws FileNotFoundException {
+        return new FastaReader(f, format).stream();
+    }
+
+    /**
+     * Lit tous les enregistrements d'un fichier FASTA.
+     *
+     * @param f      fichier FASTA
+     * @param format stockage des residus des sequences lues
+     * @return enregistrements du fichier, dans l'ordre
+     * @throws FileNotFoundException Si le fichier n'a pas ete trouve.
+     */
+    public static ArrayList<Sequence> readAll(File f, Format format) throws FileNotFoundException {
+        ArrayList<Sequence> sequences = new ArrayList<>();
+        try (FastaReader reader = new FastaReader(f, format)) {
+            reader.forEachRemaining(sequences::add);
+        }
+        return sequences;
+    }
+
+    /**
+     * Renvoie les enregistrements restants sous forme de Stream. Fermer le Stream ferme le lecteur.
+     *
+     * @return enregistrements restants, dans l'ordre
+     */
+    public Stream<SequenceLabeled> stream() {
+        Spliterator<SequenceLabeled> spliterator = Spliterators.spliteratorUnknownSize(this,
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(this::close);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (this.next == null) {
+            try {
+                this.next = this.readRecord();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return this.next != null;
+    }
+
+    @Override
+    public SequenceLabeled next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        SequenceLabeled record = this.next;
+        this.next = null;
+        return record;
+    }
+
+    @Override
+    public void close() {
+        this.buffer = null;
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Projette en memoire la fenetre suivante du fichier.
+     *
+     * @return faux si la fin du fichier est atteinte
+     * @throws IOException Si la lecture echoue.
+     */
+    private boolean map() throws IOException {
+        long size = this.channel.size();
+        if (this.position >= size) {
+            return false;
+        }
+        long length = Math.min(WINDOW_SIZE, size - this.position);
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, this.position, length);
+        this.position += length;
+        return true;
+    }
+
+    /**
+     * Lit l'octet suivant du fichier.
+     *
+     * @return octet lu, ou -1 a la fin du fichier
+     * @throws IOException Si la lecture echoue.
+     */
+    private int read() throws IOException {
+        if ((this.buffer == null || !this.buffer.hasRemaining()) && !this.map()) {
+            return -1;
+        }
+        return this.buffer.get() & 0xFF;
+    }
+
+    /**
+     * Lit la fin d'une ligne d'en-tete, '>' deja lu, retour a la ligne compris.
+     *
+     * @return en-tete sans '>' ni espaces aux extremites
+     * @throws IOException Si la lecture echoue.
+     */
+    private String readHeader() throws IOException {
+        int length = 0;
+        int b;
+        while ((b = this.read()) >= 0 && b != '\n') {
+            if (length == this.header.length) {
+                this.header = grow(this.header, "L'en-tete");
+            }
+            this.header[length++] = (byte) b;
+        }
+        return new String(this.header, 0, length, StandardCharsets.UTF_8).trim();
+    }
+
+    /**
+     * Lit l'enregistrement suivant. Les lignes vides et les espaces dans les sequences sont ignores ; des residus
+     * precedant le premier en-tete forment un enregistrement de label vide.
+     *
+     * @return enregistrement, ou null a la fin du fichier
+     * @throws IOException Si la lecture echoue.
+     */
+    private SequenceLabeled readRecord() throws IOException {
+        String label = this.nextLabel;
+        this.nextLabel = null;
+        int length = 0;
+        boolean lineStart = true;
+        int b;
+
+        while ((b = this.read()) >= 0) {
+            if (b == '>' && lineStart) {
+                String header = this.readHeader();
+                if (label == null && length == 0) {
+                    label = header;
+                    continue;
+                }
+                this.nextLabel = header;
+                return this.build(label == null ? "" : label, length);
+            }
+            lineStart = b == '\n';
+            if (b > ' ') {
+                if (length == this.residues.length) {
+                    this.residues = grow(this.residues, "La sequence '" + (label == null ? "" : label) + "'");
+                }
+                this.residues[length++] = (byte) b;
+            }
+        }
+
+        if (label == null && length == 0) {
+            return null;
+        }
+        return this.build(label == null ? "" : label, length);
+    }
+
+    /**
+     * Double la taille d'un tampon, sans depasser la taille maximale d'un tableau.
+     *
+     * @param buffer tampon plein
+     * @param what   contenu du tampon, pour le message d'erreur
+     * @return copie agrandie du tampon
+     * @throws IOException Si le tampon a deja la taille maximale d'un tableau.
+     */
+    private static byte[] grow(byte[] buffer, String what) throws IOException {
+        if (buffer.length >= MAX_ARRAY_SIZE) {
+            throw new IOException(what + " depasse " + MAX_ARRAY_SIZE + " octets, taille maximale d'un tableau.");
+        }
+        return Arrays.copyOf(buffer, (int) Math.min(MAX_ARRAY_SIZE, 2L * buffer.length));
+    }
+
+    /**
+     * Construit la sequence etiquetee a partir des length premiers octets du tampon.
+     *
+     * @param label  label de la sequence
+     * @param length nombre de residus
+     * @return sequence etiquetee
+     */
+    private SequenceLabeled build(String label, int length) {
+        switch (this.format) {
+            case PACKED:
+                return new SequenceLabeled(new PackedSequence(this.residues, length), label);
+            case BYTE:
+                return new SequenceLabeled(new ByteSequence(Arrays.copyOf(this.residues, length)), label);
+            default:
+                return new SequenceLabeled(new String(this.residues, 0, length, StandardCharsets.ISO_8859_1), label);
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            File multiFasta = File.createTempFile("hemoglobins", ".fa");
+            multiFasta.deleteOnExit();
+            StringBuilder sb = new StringBuilder();
+            for (File f : new File(System.getProperty("user.dir") + "/data").listFiles()) {
+                if (f.getName().endsWith("_sequence.fa")) {
+                    sb.append('>').append(f.getName().replace("_sequence.fa", "").replace('_', ' ')).append('\n');
+                    String seq = Utils.readFasta(f);
+                    for (int i = 0; i < seq.length(); i += 60) {
+                        sb.append(seq, i, Math.min(i + 60, seq.length())).append('\n');
+                    }
+                }
+            }
+            Files.writeString(multiFasta.toPath(), sb);
+
+            try (Stream<SequenceLabeled> records = FastaReader.stream(multiFasta, Format.PACKED)) {
+                records.forEach(s -> System.out.println(s + " : " + s.getStorage().getClass().getName() + ", "
+                        + s.getSeq().length() + " bases"));
+            }
+
+            ArrayList<Sequence> data = FastaReader.readAll(multiFasta, Format.PACKED);
+            ClusterOfSequences cluster = new ClusterOfSequences(data);
+            cluster.clusterizeMatrix();
+            System.out.println("Newick clusterise : " + cluster.getNewick());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ajout au fil de l'eau de sequences dans un cluster deja clusterise. Chaque sequence est inseree par
+ * ClusterOfSequences.insert(), au prix de quelques distances par niveau de l'arbre, au lieu de reclusteriser toutes les
+ * sequences. L'arbre s'eloigne peu a peu de celui d'une clusterisation complete : on mesure cette derive par les
+ * ecarts renvoyes par insert(), c'est-a-dire les sequences fusionnees plus haut que leur distance au cluster rejoint
+ * et les clusters devenus plus hauts que leur pere, et l'on propose une reclusterisation complete des qu'elle depasse
+ * un seuil. Des insertions qui trouvent leur place ne font pas deriver l'arbre, quel que soit leur nombre.
+ */
+public class IncrementalClustering {
+
+    /**
+     * Derive au dela de laquelle une reclusterisation est proposee par defaut.
+     */
+    public static final double DEFAULT_MAX_DRIFT = 0.005;
+
+    private ClusterOfSequences cluster;
+    private DistanceFunction distance;
+    private double maxDrift;
+    private int nbThreads;
+    private int sizeAtRebuild;
+    private int nbInserted;
+    private double error;
+    private AtomicLong nbDistances;
+
+    /**
+     * Construit une clusterisation incrementale utilisant Sequence.distance(), DEFAULT_MAX_DRIFT et tous les
+     * processeurs disponibles.
+     *
+     * @param cluster cluster recevant les sequences, clusterise s'il ne l'est pas deja
+     */
+    public IncrementalClustering(ClusterOfSequences cluster) {
+        this(cluster, DistanceFunction.SEQUENCE, DEFAULT_MAX_DRIFT, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Construit une clusterisation incrementale. La fonction de distance sert aux insertions comme aux
+     * reclusterisations : avec un DistanceCache, une reclusterisation ne recalcule pas les distances deja calculees.
+     *
+     * @param cluster   cluster recevant les sequences, clusterise s'il ne l'est pas deja
+     * @param distance  fonction de distance entre deux sequences
+     * @param maxDrift  derive au dela de laquelle une reclusterisation est proposee
+     * @param nbThreads nombre de threads utilises pour reclusteriser
+     */
+    public IncrementalClustering(ClusterOfSequences cluster, DistanceFunction distance, double maxDrift,
+                                 int nbThreads) {
+        if (nbThreads < 1) {
+            throw new IllegalArgumentException("Le nombre de threads doit etre positif.");
+        }
+        this.cluster = cluster;
+        this.distance = distance;
+        this.maxDrift = maxDrift;
+        this.nbThreads = nbThreads;
+        this.nbDistances = new AtomicLong();
+        if (cluster.getSubClusters().isEmpty() && cluster.getElements().size() > 1) {
+            this.rebuild();
+        } else {
+            this.sizeAtRebuild = cluster.getElements().size();
+        }
+    }
+
+    /**
+     * Insere une sequence dans le cluster.
+     *
+     * @param seq sequence a inserer
+     * @return vrai si une reclusterisation est proposee, voir needsRebuild()
+     */
+    public boolean insert(Sequence seq) {
+        DistanceFunction counted = (s1, s2) -> {
+            this.nbDistances.incrementAndGet();
+            return this.distance.distance(s1, s2);
+        };
+        this.error += this.cluster.insert(seq, counted);
+        this.nbInserted++;
+        return this.needsRebuild();
+    }
+
+    /**
+     * Renvoie la derive de l'arbre depuis la derniere clusterisation complete : la somme des ecarts des insertions,
+     * rapportee au nombre de sequences de l'arbre. C'est l'erreur moyenne sur la hauteur de fusion d'une sequence.
+     *
+     * @return derive, 0 juste apres une clusterisation complete
+     */
+    public double getDrift() {
+        return this.error / Math.max(1, this.sizeAtRebuild + this.nbInserted);
+    }
+
+    /**
+     * Indique si la derive depasse le seuil, auquel cas il vaut mieux appeler rebuild().
+     *
+     * @return vrai si une reclusterisation est proposee
+     */
+    public boolean needsRebuild() {
+        return this.getDrift() > this.maxDrift;
+    }
+
+    /**
+     * Reclusterise toutes les sequences du cluster au lien moyen, avec la chaine des plus proches voisins sur une
+     * matrice de distances calculee en parallele, et remet la derive a 0.
+     */
+    public void rebuild() {
+        List<Sequence> elements = this.cluster.getElements();
+        this.cluster.clusterizeNNChain(new DistanceMatrixBuilder(this.distance, this.nbThreads).build(elements),
+                Linkage.AVERAGE);
+        this.sizeAtRebuild = elements.size();
+        this.nbInserted = 0;
+        this.error = 0;
+    }
+
+    /**
+     * Renvoie le nombre de sequences inserees depuis la derniere clusterisation complete.
+     *
+     * @return nombre de sequences inserees
+     */
+    public int getInsertedCount() {
+        return this.nbInserted;
+    }
+
+    /**
+     * Renvoie la somme des ecarts des insertions depuis la derniere clusterisation complete, voir
+     * ClusterOfSequences.insert().
+     *
+     * @return somme des ecarts, en distance
+     */
+    public double getError() {
+        return this.error;
+    }
+
+    /**
+     * Renvoie le nombre de distances calculees par les insertions depuis la construction.
+     *
+     * @return nombre de distances
+     */
+    public long getDistanceCount() {
+        return this.nbDistances.get();
+    }
+
+    public static void main(String[] args) {
+        // 20 familles de sequences, chaque sequence differant de l'ancetre de sa famille sur 3 bases.
+        Random random = new Random(42);
+        String[] ancestors = new String[20];
+        for (int f = 0; f < ancestors.length; f++) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 100; i++) {
+                sb.append("ACGT".charAt(random.nextInt(4)));
+            }
+            ancestors[f] = sb.toString();
+        }
+        ArrayList<Sequence> stream = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            StringBuilder sb = new StringBuilder(ancestors[random.nextInt(ancestors.length)]);
+            for (int j = 0; j < 3; j++) {
+                sb.setCharAt(random.nextInt(sb.length()), "ACGT".charAt(random.nextInt(4)));
+            }
+            stream.add(new Sequence(sb.toString()));
+        }
+
+        ClusterOfSequences cluster = new ClusterOfSequences(new ArrayList<>(stream.subList(0, 2000)));
+        IncrementalClustering incremental = new IncrementalClustering(cluster);
+        double t = System.nanoTime();
+        int nbRebuilds = 0;
+        for (Sequence seq : stream.subList(2000, stream.size())) {
+            if (incremental.insert(seq)) {
+                incremental.rebuild();
+                nbRebuilds++;
+            }
+        }
+        double t2 = System.nanoTime();
+        System.out.println("1000 insertions dans " + cluster.getElements().size() + " sequences : "
+                + (t2 - t) / 1e6 + " ms, " + incremental.getDistanceCount() / 1000.0 + " distances par insertion, "
+                + nbRebuilds + " reclusterisations, derive " + incremental.getDrift());
+
+        // Chaque sequence inseree doit rejoindre un sous arbre de sa famille.
+        ClusterOfSequences small = new ClusterOfSequences(new ArrayList<>(stream.subList(0, 500)));
+        IncrementalClustering few = new IncrementalClustering(small, DistanceFunction.SEQUENCE, 1,
+                Runtime.getRuntime().availableProcessors());
+        int nbWellPlaced = 0;
+        for (Sequence seq : stream.subList(500, 600)) {
+            few.insert(seq);
+            ClusterOfSequences parent = small;
+            while (!parent.getSubClusters().get(parent.getSubClusters().size() - 1).getElements().contains(seq)
+                    || parent.getSubClusters().get(parent.getSubClusters().size() - 1).getElements().size() > 1) {
+                for (ClusterOfSequences sub : parent.getSubClusters()) {
+                    if (sub.getElements().contains(seq)) {
+                        parent = sub;
+                        break;
+                    }
+                }
+            }
+            Sequence sibling = parent.getSubClusters().get(0).getElements().get(0);
+            if (sibling.distance(seq) < 0.2) {
+                nbWellPlaced++;
+            }
+        }
+        System.out.println("Sequences inserees a cote de leur famille : " + nbWellPlaced + " sur 100");
+    }
+}
@@ -0,0 +1,304 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Profil des k-mers d'une sequence nucleotidique : nombre d'occurrences de chaque k-mer, code sur 2 bits par base.
+ * Pour k &lt;= DENSE_MAX_K, les occurrences sont comptees dans un tableau de 4^k entiers, au dela dans une table de
+ * hachage a adressage ouvert de cles long, sans objets intermediaires. Le profil est ensuite range sous forme de deux
+ * tableaux tries (k-mers et occurrences), ce qui permet de comparer deux profils par une simple fusion.
+ */
+public class KmerProfile {
+
+    /**
+     * Plus grande longueur de k-mers comptee dans un tableau dense de 4^k cases (256 Ko pour k = 8), libere une fois
+     * le profil construit.
+     */
+    public static final int DENSE_MAX_K = 8;
+
+    private int k;
+    // k-mers presents, tries par ordre croissant, et leur nombre d'occurrences.
+    private long[] kmers;
+    private int[] counts;
+    private double norm;
+
+    /**
+     * Compte les k-mers d'une sequence. Les k-mers contenant un caractere autre que A, C, G ou T sont ignores.
+     *
+     * @param s sequence
+     * @param k longueur des k-mers, de 1 a 31
+     */
+    public KmerProfile(Sequence s, int k) {
+        if (k < 1 || k > 31) {
+            throw new IllegalArgumentException("k doit etre compris entre 1 et 31.");
+        }
+        this.k = k;
+
+        String seq = s.getSeq();
+        long mask = (1L << (2 * k)) - 1;
+        int[] dense = k <= DENSE_MAX_K ? new int[1 << (2 * k)] : null;
+        LongIntMap sparse = k <= DENSE_MAX_K ? null : new LongIntMap(Math.max(16, seq.length()));
+        long kmer = 0;
+        int valid = 0;
+
+        for (int i = 0; i < seq.length(); i++) {
+            char c = seq.charAt(i);
+            int code = Utils.baseCode(c);
+            if (code < 0) {
+                valid = 0;
+                continue;
+            }
+            kmer = ((kmer << 2) | code) & mask;
+            if (++valid >= k) {
+                if (dense != null) {
+                    dense[(int) kmer]++;
+                } else {
+                    sparse.increment(kmer);
+                }
+            }
+        }
+
+        if (dense != null) {
+            int distinct = 0;
+            for (int count : dense) {
+                if (count != 0) {
+                    distinct++;
+                }
+            }
+            this.kmers = new long[distinct];
+            this.counts = new int[distinct];
+            int j = 0;
+            for (int i = 0; i < dense.length; i++) {
+                if (dense[i] != 0) {
+                    this.kmers[j] = i;
+                    this.counts[j++] = dense[i];
+                }
+            }
+        } else {
+            sparse.toSortedArrays(this);
+        }
+
+        double sum = 0;
+        for (int count : this.counts) {
+            sum += (double) count * count;
+        }
+        this.norm = Math.sqrt(sum);
+    }
+
+    /**
+     * Renvoie la longueur des k-mers.
+     *
+     * @return k
+     */
+    public int getK() {
+        return this.k;
+    }
+
+    /**
+     * Renvoie le nombre de k-mers distincts de la sequence.
+     *
+     * @return nombre de k-mers distincts
+     */
+    public int size() {
+        return this.kmers.length;
+    }
+
+    /**
+     * Renvoie le nombre d'occurrences d'un k-mer.
+     *
+     * @param kmer k-mer code sur 2 bits par base, la premiere base dans les bits de poids fort
+     * @return nombre d'occurrences
+     */
+    public int getCount(long kmer) {
+        int i = Arrays.binarySearch(this.kmers, kmer);
+        return i < 0 ? 0 : this.counts[i];
+    }
+
+    /**
+     * Calcule le produit scalaire des vecteurs d'occurrences des deux profils.
+     *
+     * @param other profil de l'autre sequence, de meme k
+     * @return produit scalaire
+     */
+    public double dot(KmerProfile other) {
+        if (this.k != other.k) {
+            throw new IllegalArgumentException("Les profils doivent avoir le meme k.");
+        }
+        long[] a = this.kmers;
+        long[] b = other.kmers;
+        int i = 0;
+        int j = 0;
+        double dot = 0;
+
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                dot += (double) this.counts[i++] * other.counts[j++];
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return dot;
+    }
+
+    /**
+     * Calcule la distance cosinus entre les vecteurs d'occurrences des deux profils : 1 - cos(angle). Elle vaut 0
+     * pour deux sequences de memes k-mers en memes proportions et 1 pour deux sequences sans k-mer commun.
+     *
+     * @param other profil de l'autre sequence, de meme k
+     * @return distance cosinus, entre 0 et 1
+     */
+    public double distance(KmerProfile other) {
+        if (this.norm == 0 || other.norm == 0) {
+            return this.norm == other.norm ? 0 : 1;
+        }
+        return Math.max(0, 1 - this.dot(other) / (this.norm * other.norm));
+    }
+
+    /**
+     * Table de hachage a adressage ouvert et sondage lineaire associant un nombre d'occurrences a un k-mer. Les k-mers
+     * etant positifs, la valeur -1 marque les cases libres.
+     */
+    private static class LongIntMap {
+
+        private long[] keys;
+        private int[] values;
+        private int size;
+
+        LongIntMap(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(16, expected) * 2 - 1) << 1;
+            this.keys = new long[capacity];
+            this.values = new int[capacity];
+            Arrays.fill(this.keys, -1L);
+        }
+
+        /**
+         * Ajoute une occurrence d'un k-mer.
+         *
+         * @param key k-mer, positif
+         */
+        void increment(long key) {
+            int mask = this.keys.length - 1;
+            int slot = mix(key) & mask;
+            while (this.keys[slot] != -1L) {
+                if (this.keys[slot] == key) {
+                    this.values[slot]++;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            this.keys[slot] = key;
+            this.values[slot] = 1;
+            // La table est agrandie au dela de 50 % de remplissage pour garder des sondages courts.
+            if (++this.size * 2 > this.keys.length) {
+                this.grow();
+            }
+        }
+
+        /**
+         * Double la capacite de la table.
+         */
+        private void grow() {
+            long[] oldKeys = this.keys;
+            int[] oldValues = this.values;
+            this.keys = new long[oldKeys.length * 2];
+            this.values = new int[oldKeys.length * 2];
+            Arrays.fill(this.keys, -1L);
+            int mask = this.keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != -1L) {
+                    int slot = mix(oldKeys[i]) & mask;
+                    while (this.keys[slot] != -1L) {
+                        slot = (slot + 1) & mask;
+                    }
+                    this.keys[slot] = oldKeys[i];
+                    this.values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        /**
+         * Range le contenu de la table, trie par k-mer, dans un profil.
+         *
+         * @param profile profil a remplir
+         */
+        void toSortedArrays(KmerProfile profile) {
+            long[] sorted = new long[this.size];
+            int j = 0;
+            for (long key : this.keys) {
+                if (key != -1L) {
+                    sorted[j++] = key;
+                }
+            }
+            Arrays.sort(sorted);
+            int[] counts = new int[this.size];
+            for (int i = 0; i < sorted.length; i++) {
+                counts[i] = this.get(sorted[i]);
+            }
+            profile.kmers = sorted;
+            profile.counts = counts;
+        }
+
+        /**
+         * Renvoie le nombre d'occurrences d'un k-mer.
+         *
+         * @param key k-mer, positif
+         * @return nombre d'occurrences
+         */
+        private int get(long key) {
+            int mask = this.keys.length - 1;
+            int slot = mix(key) & mask;
+            while (this.keys[slot] != -1L) {
+                if (this.keys[slot] == key) {
+                    return this.values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return 0;
+        }
+
+        /**
+         * Melange les bits d'un k-mer pour repartir les cles consecutives dans la table.
+         *
+         * @param key k-mer
+         * @return valeur de hachage
+         */
+        private static int mix(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            ArrayList<Sequence> data = new ArrayList<>();
+            for (File f : new File(System.getProperty("user.dir") + "/data").listFiles()) {
+                if (f.getName().endsWith("_sequence.fa")) {
+                    data.add(new SequenceLabeled(f, f.getName().replace("_sequence.fa", "")));
+                }
+            }
+
+            for (int k : new int[]{4, 16}) {
+                KmerProfile first = new KmerProfile(data.get(0), k);
+                for (Sequence s : data) {
+                    System.out.println("k = " + k + ", " + data.get(0) + " / " + s + " : distance cosinus "
+                            + first.distance(new KmerProfile(s, k)));
+                }
+            }
+
+            ArrayList<Sequence> many = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                many.add(new Sequence(data.get(i % data.size()).getSeq()));
+            }
+            double t = System.nanoTime();
+            new DistanceMatrixBuilder(DistanceFunction.kmerCosine(8), Runtime.getRuntime().availableProcessors())
+                    .build(many);
+            double t2 = System.nanoTime();
+            System.out.println("Matrice de " + many.size() + " sequences (k = 8) : " + (t2 - t) / 1e6 + " ms");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
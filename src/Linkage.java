@@ -0,0 +1,101 @@
+/**
+ * Criteres de liaison utilisables par les clusterisations agglomeratives sur matrice de distances. Chaque critere
+ * donne la distance entre le cluster issu de la fusion de a et b et un autre cluster k d'apres la formule de
+ * Lance-Williams, c'est a dire seulement a partir des distances d(a, k), d(b, k), d(a, b) et des tailles des
+ * clusters : une mise a jour se fait en temps constant, sans parcourir les sequences des clusters.
+ */
+public enum Linkage {
+
+    /**
+     * Lien simple : distance minimale entre deux sequences des clusters.
+     */
+    SINGLE {
+        @Override
+        public double update(double dak, double dbk, double dab, int na, int nb, int nk) {
+            return Math.min(dak, dbk);
+        }
+    },
+
+    /**
+     * Lien complet : distance maximale entre deux sequences des clusters.
+     */
+    COMPLETE {
+        @Override
+        public double update(double dak, double dbk, double dab, int na, int nb, int nk) {
+            return Math.max(dak, dbk);
+        }
+    },
+
+    /**
+     * Lien moyen (UPGMA) : moyenne des distances entre les sequences des clusters, comme ClusterOfSequences.linkage().
+     */
+    AVERAGE {
+        @Override
+        public double update(double dak, double dbk, double dab, int na, int nb, int nk) {
+            return (na * dak + nb * dbk) / (na + nb);
+        }
+    },
+
+    /**
+     * Lien moyen pondere (WPGMA) : moyenne des distances des deux clusters fusionnes, quelle que soit leur taille.
+     */
+    WEIGHTED {
+        @Override
+        public double update(double dak, double dbk, double dab, int na, int nb, int nk) {
+            return (dak + dbk) / 2;
+        }
+    },
+
+    /**
+     * Lien des centroides, dans la forme utilisee par scipy : distance entre les centres des clusters, les distances
+     * etant vues comme des distances euclidiennes. Ce critere n'est pas reductible.
+     */
+    CENTROID {
+        @Override
+        public double update(double dak, double dbk, double dab, int na, int nb, int nk) {
+            double n = na + nb;
+            double d = (na * dak * dak + nb * dbk * dbk) / n - na * nb * dab * dab / (n * n);
+            return Math.sqrt(Math.max(d, 0));
+        }
+
+        @Override
+        public boolean isReducible() {
+            return false;
+        }
+    },
+
+    /**
+     * Methode de Ward, dans la forme utilisee par scipy (les distances ne sont pas elevees au carre).
+     */
+    WARD {
+        @Override
+        public double update(double dak, double dbk, double dab, int na, int nb, int nk) {
+            double d = ((na + nk) * dak * dak + (nb + nk) * dbk * dbk - nk * dab * dab) / (na + nb + nk);
+            return Math.sqrt(Math.max(d, 0));
+        }
+    };
+
+    /**
+     * Calcule la distance entre le cluster issu de la fusion de a et b et le cluster k.
+     *
+     * @param dak distance entre a et k
+     * @param dbk distance entre b et k
+     * @param dab distance entre a et b
+     * @param na  nombre de sequences de a
+     * @param nb  nombre de sequences de b
+     * @param nk  nombre de sequences de k
+     * @return distance entre la fusion de a et b et k
+     */
+    public abstract double update(double dak, double dbk, double dab, int na, int nb, int nk);
+
+    /**
+     * Indique si le critere est reductible, c'est a dire si la fusion de deux clusters ne peut pas etre plus proche
+     * d'un troisieme que ne l'etait le plus proche des deux. Seuls ces criteres peuvent etre utilises avec la chaine
+     * des plus proches voisins.
+     *
+     * @return vrai si le critere est reductible
+     */
+    public boolean isReducible() {
+        return true;
+    }
+}
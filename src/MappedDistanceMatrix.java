@@ -0,0 +1,274 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Matrice de distances rangee dans un fichier projete en memoire plutot que sur le tas, pour les jeux de sequences
+ * dont la matrice ne tient pas en memoire : 200 000 sequences donnent 2 x 10^10 distances dans le triangle superieur,
+ * soit 80 Go en float et 40 Go en demi-precision. Le fichier est projete par segments de SEGMENT_SIZE octets, et
+ * c'est le systeme qui charge les pages lues et reecrit les pages modifiees.
+ * La clusterisation parcourt des lignes entieres de la matrice : avec la disposition condensee de DistanceMatrix, la
+ * partie (k, i) d'une ligne i, k &lt; i, toucherait une page differente pour chaque k. Le triangle superieur est donc
+ * range par tuiles carrees de TILE_SIZE sequences de cote, ligne de tuiles apres ligne de tuiles, chaque tuile
+ * occupant une page de 4 Ko en simple precision. Une ligne comme une colonne ne touche ainsi qu'une page pour
+ * TILE_SIZE sequences, et les tuiles d'une ligne de tuiles se suivent dans le fichier. Les tuiles de
+ * DistanceMatrixBuilder, de meme taille par defaut, sont ecrites chacune dans une seule tuile du fichier.
+ */
+public class MappedDistanceMatrix extends DistanceMatrix implements Closeable {
+
+    /**
+     * Taille des segments projetes, en octets. Un MappedByteBuffer ne pouvant depasser 2 Go, on garde une puissance de
+     * deux multiple de la taille d'une tuile : aucune tuile n'est a cheval sur deux segments.
+     */
+    public static final long SEGMENT_SIZE = 1L << 30;
+
+    /**
+     * Nombre de sequences par cote de tuile.
+     */
+    public static final int TILE_SIZE = 32;
+
+    /**
+     * Precision des distances rangees dans le fichier.
+     */
+    public enum Precision {
+        /**
+         * Demi-precision IEEE 754 sur 2 octets : environ 3 chiffres significatifs, suffisants pour des distances entre
+         * 0 et 1 au millieme pres.
+         */
+        FLOAT16(2),
+        /**
+         * Simple precision sur 4 octets.
+         */
+        FLOAT32(4);
+
+        private final int bytes;
+
+        Precision(int bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * Renvoie la taille d'une distance.
+         *
+         * @return nombre d'octets
+         */
+        public int getBytes() {
+            return this.bytes;
+        }
+    }
+
+    private RandomAccessFile file;
+    private MappedByteBuffer[] segments;
+    private Precision precision;
+    private int nbBlocks;
+
+    /**
+     * Projette en memoire la matrice de taille size rangee dans un fichier. Le fichier est cree, ou agrandi, a la
+     * taille de la matrice ; un fichier existant de la bonne taille est repris tel quel, ce qui permet de reutiliser
+     * une matrice deja calculee.
+     *
+     * @param path      fichier de la matrice
+     * @param size      nombre de sequences
+     * @param precision precision des distances
+     * @throws IOException si le fichier ne peut pas etre ouvert ou projete
+     */
+    public MappedDistanceMatrix(File path, int size, Precision precision) throws IOException {
+        super(size, null);
+        this.precision = precision;
+        this.nbBlocks = (size + TILE_SIZE - 1) / TILE_SIZE;
+        long nbTiles = (long) this.nbBlocks * (this.nbBlocks + 1) / 2;
+        long bytes = nbTiles * TILE_SIZE * TILE_SIZE * precision.getBytes();
+        this.file = new RandomAccessFile(path, "rw");
+        try {
+            if (this.file.length() < bytes) {
+                this.file.setLength(bytes);
+            }
+            FileChannel channel = this.file.getChannel();
+            this.segments = new MappedByteBuffer[(int) ((bytes + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            for (int s = 0; s < this.segments.length; s++) {
+                long start = s * SEGMENT_SIZE;
+                this.segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, start,
+                        Math.min(SEGMENT_SIZE, bytes - start));
+                this.segments[s].order(ByteOrder.nativeOrder());
+            }
+        } catch (IOException e) {
+            this.file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Renvoie la precision des distances rangees dans le fichier.
+     *
+     * @return precision
+     */
+    public Precision getPrecision() {
+        return this.precision;
+    }
+
+    /**
+     * Renvoie la position dans le fichier de la case (i, j), avec i &lt; j : numero de la tuile dans le triangle
+     * superieur des tuiles, diagonale comprise, puis position de la case dans la tuile, ligne par ligne.
+     *
+     * @param i ligne
+     * @param j colonne
+     * @return indice de la case dans le fichier, en nombre de distances
+     */
+    @Override
+    protected long index(int i, int j) {
+        long bi = i / TILE_SIZE;
+        long bj = j / TILE_SIZE;
+        long tile = bi * this.nbBlocks - bi * (bi - 1) / 2 + (bj - bi);
+        return tile * TILE_SIZE * TILE_SIZE + (i % TILE_SIZE) * TILE_SIZE + (j % TILE_SIZE);
+    }
+
+    @Override
+    public double get(int i, int j) {
+        if (i == j) {
+            return 0;
+        }
+        long offset = (i < j ? this.index(i, j) : this.index(j, i)) * this.precision.getBytes();
+        MappedByteBuffer segment = this.segments[(int) (offset / SEGMENT_SIZE)];
+        int position = (int) (offset % SEGMENT_SIZE);
+        if (this.precision == Precision.FLOAT16) {
+            return toFloat(segment.getShort(position));
+        }
+        return segment.getFloat(position);
+    }
+
+    @Override
+    public void set(int i, int j, double d) {
+        long offset = (i < j ? this.index(i, j) : this.index(j, i)) * this.precision.getBytes();
+        MappedByteBuffer segment = this.segments[(int) (offset / SEGMENT_SIZE)];
+        int position = (int) (offset % SEGMENT_SIZE);
+        if (this.precision == Precision.FLOAT16) {
+            segment.putShort(position, toHalf((float) d));
+        } else {
+            segment.putFloat(position, (float) d);
+        }
+    }
+
+    /**
+     * Ecrit dans le fichier les pages modifiees.
+     */
+    public void force() {
+        for (MappedByteBuffer segment : this.segments) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Ecrit les pages modifiees et ferme le fichier. Les segments restent projetes jusqu'a ce que le ramasse-miettes
+     * les libere : la matrice ne doit plus etre utilisee.
+     *
+     * @throws IOException si le fichier ne peut pas etre ferme
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            this.force();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            this.file.close();
+        }
+    }
+
+    /**
+     * Convertit un float en demi-precision, a l'arrondi au plus proche (pair en cas d'egalite).
+     *
+     * @param f valeur
+     * @return bits de la valeur en demi-precision
+     */
+    static short toHalf(float f) {
+        int bits = Float.floatToIntBits(f);
+        int sign = (bits >>> 16) & 0x8000;
+        int abs = bits & 0x7FFFFFFF;
+        if (abs >= 0x7F800000) {
+            // Infini ou NaN.
+            return (short) (sign | 0x7C00 | (abs > 0x7F800000 ? 0x200 : 0));
+        }
+        if (abs >= 0x477FF000) {
+            // Au dela de 65520, la valeur s'arrondit a l'infini.
+            return (short) (sign | 0x7C00);
+        }
+        if (abs < 0x38800000) {
+            // Sous 2^-14, la valeur est un multiple denormalise de 2^-24.
+            return (short) (sign | (int) Math.rint(Float.intBitsToFloat(abs) * 0x1p24));
+        }
+        int half = (abs - 0x38000000) >>> 13;
+        int rest = abs & 0x1FFF;
+        if (rest > 0x1000 || (rest == 0x1000 && (half & 1) == 1)) {
+            half++;
+        }
+        return (short) (sign | half);
+    }
+
+    /**
+     * Convertit une valeur en demi-precision en float.
+     *
+     * @param h bits de la valeur en demi-precision
+     * @return valeur
+     */
+    static float toFloat(short h) {
+        int bits = h & 0xFFFF;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1F;
+        int mantissa = bits & 0x3FF;
+        if (exponent == 0x1F) {
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+        }
+        if (exponent == 0) {
+            float value = mantissa * 0x1p-24f;
+            return sign == 0 ? value : -value;
+        }
+        return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        ArrayList<Sequence> many = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < 100; j++) {
+                sb.append("ACGT".charAt(random.nextInt(4)));
+            }
+            many.add(new Sequence(sb.toString()));
+        }
+        int nbThreads = Runtime.getRuntime().availableProcessors();
+        DistanceMatrixBuilder builder = new DistanceMatrixBuilder(DistanceFunction.SEQUENCE, nbThreads);
+        DistanceMatrix onHeap = builder.build(many);
+
+        try {
+            for (Precision precision : Precision.values()) {
+                File path = File.createTempFile("distances", ".bin");
+                path.deleteOnExit();
+                try (MappedDistanceMatrix mapped = new MappedDistanceMatrix(path, many.size(), precision)) {
+                    builder.fill(many, mapped);
+                    double error = 0;
+                    for (int i = 0; i < many.size(); i++) {
+                        for (int j = i + 1; j < many.size(); j++) {
+                            error = Math.max(error, Math.abs(mapped.get(i, j) - onHeap.get(i, j)));
+                        }
+                    }
+
+                    double t = System.nanoTime();
+                    ClusterOfSequences cluster = new ClusterOfSequences(many);
+                    cluster.clusterizeNNChain(mapped, Linkage.AVERAGE);
+                    double t2 = System.nanoTime();
+                    System.out.println(precision + " : fichier de " + path.length() / 1024 + " Ko, erreur maximale "
+                            + error + ", clusterisation en " + (t2 - t) / 1e6 + " ms");
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Esquisse MinHash d'une sequence nucleotidique, a la maniere de Mash : on garde les size plus petites valeurs de
+ * hachage des k-mers canoniques de la sequence (le plus petit d'un k-mer et de son complementaire inverse). Deux
+ * esquisses suffisent a estimer l'indice de Jaccard des ensembles de k-mers, et donc une distance proche de la
+ * divergence des sequences, sans alignement et en un temps qui ne depend que de size.
+ */
+public class MinHashSketch {
+
+    /**
+     * Longueur des k-mers par defaut, celle de Mash.
+     */
+    public static final int DEFAULT_K = 21;
+
+    /**
+     * Nombre de valeurs de hachage gardees par defaut, celui de Mash.
+     */
+    public static final int DEFAULT_SIZE = 1000;
+
+    private int k;
+    private int size;
+    // Plus petites valeurs de hachage, distinctes et triees par ordre croissant.
+    private long[] hashes;
+
+    /**
+     * Construit l'esquisse d'une sequence avec les parametres par defaut.
+     *
+     * @param s sequence
+     */
+    public MinHashSketch(Sequence s) {
+        this(s, DEFAULT_K, DEFAULT_SIZE);
+    }
+
+    /**
+     * Construit l'esquisse d'une sequence. Les k-mers contenant un caractere autre que A, C, G ou T sont ignores.
+     *
+     * @param s    sequence
+     * @param k    longueur des k-mers, de 1 a 32
+     * @param size nombre de valeurs de hachage gardees
+     */
+    public MinHashSketch(Sequence s, int k, int size) {
+        if (k < 1 || k > 32 || size < 1) {
+            throw new IllegalArgumentException("k doit etre compris entre 1 et 32 et la taille doit etre positive.");
+        }
+        this.k = k;
+        this.size = size;
+
+        String seq = s.getSeq();
+        long mask = k == 32 ? -1L : (1L << (2 * k)) - 1;
+        int shift = 2 * (k - 1);
+        long[] bottom = new long[size];
+        int count = 0;
+        long forward = 0;
+        long reverse = 0;
+        // Nombre de bases valides consecutives terminant a la position courante.
+        int valid = 0;
+
+        for (int i = 0; i < seq.length(); i++) {
+            char c = seq.charAt(i);
+            int code = Utils.baseCode(c);
+            if (code < 0) {
+                valid = 0;
+                continue;
+            }
+            forward = ((forward << 2) | code) & mask;
+            reverse = (reverse >>> 2) | ((long) (3 - code) << shift);
+            if (++valid < k) {
+                continue;
+            }
+
+            long h = hash(Math.min(forward, reverse));
+            // La plupart des k-mers sont ecartes par cette seule comparaison une fois l'esquisse remplie.
+            if (count == size && Long.compareUnsigned(h, bottom[count - 1]) >= 0) {
+                continue;
+            }
+            int pos = unsignedSearch(bottom, count, h);
+            if (pos >= 0) {
+                continue;
+            }
+            pos = -pos - 1;
+            int moved = Math.min(count, size - 1) - pos;
+            System.arraycopy(bottom, pos, bottom, pos + 1, moved);
+            bottom[pos] = h;
+            count = Math.min(count + 1, size);
+        }
+
+        this.hashes = Arrays.copyOf(bottom, count);
+    }
+
+    /**
+     * Melange les bits d'un k-mer (finaliseur 64 bits de MurmurHash3).
+     *
+     * @param x k-mer code sur 2 bits par base
+     * @return valeur de hachage, a comparer comme un entier non signe
+     */
+    private static long hash(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+        return x;
+    }
+
+    /**
+     * Recherche dichotomique d'une valeur non signee dans les count premieres cases d'un tableau trie.
+     *
+     * @param a     tableau trie par ordre non signe croissant
+     * @param count nombre de cases utilisees
+     * @param key   valeur cherchee
+     * @return indice de la valeur, ou -(point d'insertion) - 1 si elle est absente
+     */
+    private static int unsignedSearch(long[] a, int count, long key) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Long.compareUnsigned(a[mid], key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Renvoie la longueur des k-mers.
+     *
+     * @return k
+     */
+    public int getK() {
+        return this.k;
+    }
+
+    /**
+     * Renvoie le nombre de valeurs de hachage gardees, qui peut etre inferieur a la taille demandee pour une sequence
+     * courte.
+     *
+     * @return nombre de valeurs de hachage
+     */
+    public int size() {
+        return this.hashes.length;
+    }
+
+    /**
+     * Estime l'indice de Jaccard des ensembles de k-mers des deux sequences : parmi les size plus petites valeurs de
+     * l'union des deux esquisses, on compte celles qui sont dans les deux.
+     *
+     * @param other esquisse de l'autre sequence, de memes parametres
+     * @return indice de Jaccard estime, entre 0 et 1
+     */
+    public double jaccard(MinHashSketch other) {
+        if (this.k != other.k || this.size != other.size) {
+            throw new IllegalArgumentException("Les esquisses doivent avoir les memes parametres.");
+        }
+        long[] a = this.hashes;
+        long[] b = other.hashes;
+        int i = 0;
+        int j = 0;
+        int union = 0;
+        int shared = 0;
+
+        while (union < this.size && i < a.length && j < b.length) {
+            int cmp = Long.compareUnsigned(a[i], b[j]);
+            if (cmp == 0) {
+                shared++;
+                i++;
+                j++;
+            } else if (cmp < 0) {
+                i++;
+            } else {
+                j++;
+            }
+            union++;
+        }
+        // Les valeurs restantes d'une seule esquisse completent l'union sans etre partagees.
+        union += Math.min(this.size - union, (a.length - i) + (b.length - j));
+
+        return union == 0 ? 0 : (double) shared / union;
+    }
+
+    /**
+     * Estime la distance de Mash entre les deux sequences, ln((1 + j) / 2j) / k ou j est l'indice de Jaccard, qui
+     * approche la proportion de bases differentes. Elle vaut 1 si les esquisses n'ont rien en commun.
+     *
+     * @param other esquisse de l'autre sequence, de memes parametres
+     * @return distance de Mash, entre 0 et 1
+     */
+    public double distance(MinHashSketch other) {
+        double j = this.jaccard(other);
+        if (j == 0) {
+            return 1;
+        }
+        return Math.min(1, Math.log((1 + j) / (2 * j)) / this.k);
+    }
+
+    public static void main(String[] args) {
+        try {
+            ArrayList<Sequence> data = new ArrayList<>();
+            for (File f : new File(System.getProperty("user.dir") + "/data").listFiles()) {
+                if (f.getName().endsWith("_sequence.fa")) {
+                    data.add(new SequenceLabeled(f, f.getName().replace("_sequence.fa", "")));
+                }
+            }
+
+            MinHashSketch first = new MinHashSketch(data.get(0), 15, DEFAULT_SIZE);
+            for (Sequence s : data) {
+                MinHashSketch sketch = new MinHashSketch(s, 15, DEFAULT_SIZE);
+                System.out.println(data.get(0) + " / " + s + " : Jaccard " + first.jaccard(sketch) + ", distance "
+                        + first.distance(sketch));
+            }
+
+            ClusterOfSequences cluster = new ClusterOfSequences(data);
+            cluster.clusterizeMatrix(DistanceFunction.minHash(15, DEFAULT_SIZE),
+                    Runtime.getRuntime().availableProcessors());
+            System.out.println("Newick clusterise par MinHash : " + cluster.getNewick());
+
+            // Deux sequences aleatoires d'un million de bases dont la seconde differe de la premiere sur 1 % des bases.
+            Random random = new Random(42);
+            StringBuilder sb1 = new StringBuilder();
+            for (int i = 0; i < 1000000; i++) {
+                sb1.append("ACGT".charAt(random.nextInt(4)));
+            }
+            StringBuilder sb2 = new StringBuilder(sb1);
+            for (int i = 0; i < 10000; i++) {
+                int pos = random.nextInt(sb2.length());
+                sb2.setCharAt(pos, "ACGT".charAt(("ACGT".indexOf(sb2.charAt(pos)) + 1 + random.nextInt(3)) % 4));
+            }
+            double t = System.nanoTime();
+            MinHashSketch s1 = new MinHashSketch(new PackedSequence(sb1));
+            MinHashSketch s2 = new MinHashSketch(new PackedSequence(sb2));
+            double t2 = System.nanoTime();
+            double d = s1.distance(s2);
+            double t3 = System.nanoTime();
+            System.out.println("Esquisses de 2 x 1 Mb : " + (t2 - t) / 1e6 + " ms, distance " + d + " en "
+                    + (t3 - t2) / 1e3 + " us");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
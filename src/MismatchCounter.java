@@ -0,0 +1,47 @@
+/**
+ * Noyau de comparaison de deux sequences stockees sous forme de byte[] : compte les positions differentes parmi les
+ * premieres positions des deux tableaux.
+ */
+public interface MismatchCounter {
+
+    /**
+     * Version scalaire, utilisee lorsque le module jdk.incubator.vector n'est pas disponible.
+     */
+    MismatchCounter SCALAR = (s1, s2, length) -> {
+        int sum = 0;
+        for (int i = 0; i < length; i++) {
+            if (s1[i] != s2[i]) {
+                sum++;
+            }
+        }
+        return sum;
+    };
+
+    /**
+     * Compte les positions i < length telles que s1[i] != s2[i].
+     *
+     * @param s1     premiere sequence
+     * @param s2     deuxieme sequence
+     * @param length nombre de positions a comparer
+     * @return nombre de positions differentes
+     */
+    int count(byte[] s1, byte[] s2, int length);
+
+    /**
+     * Renvoie le noyau vectoriel VectorMismatchCounter si le module jdk.incubator.vector est present (option
+     * --add-modules jdk.incubator.vector), le noyau scalaire sinon.
+     *
+     * @return le noyau le plus rapide disponible
+     */
+    static MismatchCounter best() {
+        try {
+            MismatchCounter counter = (MismatchCounter) Class.forName("VectorMismatchCounter")
+                    .getDeclaredConstructor().newInstance();
+            // On appelle le noyau une premiere fois pour que l'absence du module se manifeste ici.
+            counter.count(new byte[1], new byte[1], 1);
+            return counter;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return SCALAR;
+        }
+    }
+}
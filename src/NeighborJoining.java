@@ -0,0 +1,359 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Arbre construit par neighbor-joining (Saitou et Nei) a partir d'une matrice de distances, sans hypothese d'horloge
+ * moleculaire : chaque branche a sa propre longueur. La recherche de la paire a joindre suit RapidNJ : chaque cluster
+ * garde la liste triee de ses distances aux clusters plus anciens, et comme Q(i, j) = (m - 2) d(i, j) - r(i) - r(j)
+ * est minore par (m - 2) d(i, j) - r(i) - max(r), le parcours d'une liste s'arrete des que ce minorant depasse le
+ * meilleur Q trouve. La plupart des Q ne sont ainsi jamais calcules.
+ * Les noeuds sont numerotes comme dans Dendrogram : les feuilles de 0 a n - 1, puis le noeud cree par la m-ieme
+ * jonction en n + m. Les deux derniers clusters sont relies par une racine placee au milieu de leur branche.
+ */
+public class NeighborJoining {
+
+    private List<? extends Sequence> leaves;
+    // Fils et longueur de la branche vers le pere de chaque noeud.
+    private int[] left;
+    private int[] right;
+    private double[] lengths;
+    private int nbJoins;
+    private long nbEvaluations;
+
+    /**
+     * Construit un arbre vide sur les feuilles.
+     *
+     * @param leaves sequences
+     */
+    private NeighborJoining(List<? extends Sequence> leaves) {
+        this.leaves = leaves;
+        int capacity = Math.max(0, leaves.size() - 1);
+        this.left = new int[capacity];
+        this.right = new int[capacity];
+        this.lengths = new double[leaves.size() + capacity];
+        this.nbJoins = 0;
+    }
+
+    /**
+     * Construit l'arbre neighbor-joining des sequences. La matrice est modifiee : la case d'un cluster joint est
+     * reutilisee par le nouveau cluster.
+     *
+     * @param elements sequences
+     * @param dist     matrice des distances, la case (i, j) correspond aux sequences i et j
+     * @return arbre
+     */
+    public static NeighborJoining build(List<? extends Sequence> elements, DistanceMatrix dist) {
+        int n = elements.size();
+        NeighborJoining tree = new NeighborJoining(elements);
+        if (n < 2) {
+            return tree;
+        }
+
+        int nbNodes = 2 * n - 1;
+        // Case de la matrice de chaque noeud, -1 s'il a deja ete joint ; noeud range dans chaque case.
+        int[] slotOf = new int[nbNodes];
+        int[] nodeAt = new int[n];
+        // Liste triee des distances de chaque noeud aux noeuds plus anciens, voir entry().
+        long[][] rows = new long[nbNodes][];
+        double[] sums = new double[n];
+        Arrays.fill(slotOf, -1);
+
+        for (int i = 0; i < n; i++) {
+            slotOf[i] = i;
+            nodeAt[i] = i;
+            long[] row = new long[i];
+            for (int j = 0; j < i; j++) {
+                double d = dist.get(i, j);
+                row[j] = entry(d, j);
+                sums[i] += d;
+                sums[j] += d;
+            }
+            Arrays.sort(row);
+            rows[i] = row;
+        }
+
+        // active contient les cases des clusters restants.
+        int[] active = new int[n];
+        for (int i = 0; i < n; i++) {
+            active[i] = i;
+        }
+        int m = n;
+
+        while (m > 2) {
+            double maxSum = Double.NEGATIVE_INFINITY;
+            for (int k = 0; k < m; k++) {
+                maxSum = Math.max(maxSum, sums[active[k]]);
+            }
+
+            int bestA = -1;
+            int bestB = -1;
+            double qMin = Double.POSITIVE_INFINITY;
+            for (int k = 0; k < m; k++) {
+                int a = active[k];
+                long[] row = rows[nodeAt[a]];
+                double base = -sums[a] - maxSum;
+                for (long e : row) {
+                    // La distance de la liste est arrondie par defaut : le minorant reste valide.
+                    if ((m - 2) * (double) key(e) + base >= qMin) {
+                        break;
+                    }
+                    int b = slotOf[(int) e];
+                    if (b < 0) {
+                        continue;
+                    }
+                    tree.nbEvaluations++;
+                    double q = (m - 2) * dist.get(a, b) - sums[a] - sums[b];
+                    if (q < qMin) {
+                        qMin = q;
+                        bestA = a;
+                        bestB = b;
+                    }
+                }
+            }
+
+            // Longueurs des branches des deux clusters joints vers le nouveau noeud.
+            double dab = dist.get(bestA, bestB);
+            double lengthA = dab / 2 + (sums[bestA] - sums[bestB]) / (2 * (m - 2));
+            double lengthB = dab - lengthA;
+            int u = tree.join(nodeAt[bestA], nodeAt[bestB], lengthA, lengthB);
+            slotOf[nodeAt[bestA]] = -1;
+            slotOf[nodeAt[bestB]] = -1;
+            rows[nodeAt[bestA]] = null;
+            rows[nodeAt[bestB]] = null;
+
+            // Le nouveau cluster prend la case de bestA ; bestB est retire des cases actives.
+            int w = 0;
+            for (int k = 0; k < m; k++) {
+                if (active[k] != bestB) {
+                    active[w++] = active[k];
+                }
+            }
+            m--;
+
+            long[] row = new long[m - 1];
+            double sumU = 0;
+            int r = 0;
+            for (int k = 0; k < m; k++) {
+                int c = active[k];
+                if (c != bestA) {
+                    double dac = dist.get(bestA, c);
+                    double dbc = dist.get(bestB, c);
+                    double duc = (dac + dbc - dab) / 2;
+                    dist.set(bestA, c, duc);
+                    sums[c] += duc - dac - dbc;
+                    sumU += duc;
+                    row[r++] = entry(duc, nodeAt[c]);
+                }
+            }
+            Arrays.sort(row);
+            sums[bestA] = sumU;
+            nodeAt[bestA] = u;
+            slotOf[u] = bestA;
+            rows[u] = row;
+        }
+
+        double d = dist.get(active[0], active[1]);
+        tree.join(nodeAt[active[0]], nodeAt[active[1]], d / 2, d / 2);
+        return tree;
+    }
+
+    /**
+     * Code une entree de liste triee : une distance, arrondie par defaut en float, et un noeud, ranges dans un long
+     * dont l'ordre signe est celui des distances.
+     *
+     * @param d    distance
+     * @param node noeud
+     * @return entree
+     */
+    private static long entry(double d, int node) {
+        float f = (float) d;
+        if (f > d) {
+            f = Math.nextDown(f);
+        }
+        int bits = Float.floatToIntBits(f);
+        bits ^= (bits >> 31) & 0x7FFFFFFF;
+        return ((long) bits << 32) | node;
+    }
+
+    /**
+     * Renvoie la distance d'une entree de liste triee.
+     *
+     * @param e entree
+     * @return distance arrondie par defaut
+     */
+    private static float key(long e) {
+        int bits = (int) (e >> 32);
+        bits ^= (bits >> 31) & 0x7FFFFFFF;
+        return Float.intBitsToFloat(bits);
+    }
+
+    /**
+     * Joint deux noeuds.
+     *
+     * @param a       premier noeud
+     * @param b       deuxieme noeud
+     * @param lengthA longueur de la branche de a
+     * @param lengthB longueur de la branche de b
+     * @return identifiant du nouveau noeud
+     */
+    private int join(int a, int b, double lengthA, double lengthB) {
+        this.left[this.nbJoins] = a;
+        this.right[this.nbJoins] = b;
+        this.lengths[a] = lengthA;
+        this.lengths[b] = lengthB;
+        return this.leaves.size() + this.nbJoins++;
+    }
+
+    /**
+     * Renvoie le nombre de feuilles.
+     *
+     * @return nombre de sequences
+     */
+    public int getLeafCount() {
+        return this.leaves.size();
+    }
+
+    /**
+     * Renvoie le nombre de noeuds, feuilles comprises.
+     *
+     * @return nombre de noeuds
+     */
+    public int getNodeCount() {
+        return this.leaves.size() + this.nbJoins;
+    }
+
+    /**
+     * Renvoie la racine de l'arbre.
+     *
+     * @return racine, -1 si l'arbre est vide
+     */
+    public int getRoot() {
+        return this.getNodeCount() - 1;
+    }
+
+    /**
+     * Indique si un noeud est une feuille.
+     *
+     * @param node noeud
+     * @return vrai pour une feuille
+     */
+    public boolean isLeaf(int node) {
+        return node < this.leaves.size();
+    }
+
+    /**
+     * Renvoie la sequence d'une feuille.
+     *
+     * @param node feuille
+     * @return sequence
+     */
+    public Sequence getLeaf(int node) {
+        return this.leaves.get(node);
+    }
+
+    /**
+     * Renvoie le premier fils d'un noeud interne.
+     *
+     * @param node noeud interne
+     * @return premier fils
+     */
+    public int getLeft(int node) {
+        return this.left[node - this.leaves.size()];
+    }
+
+    /**
+     * Renvoie le deuxieme fils d'un noeud interne.
+     *
+     * @param node noeud interne
+     * @return deuxieme fils
+     */
+    public int getRight(int node) {
+        return this.right[node - this.leaves.size()];
+    }
+
+    /**
+     * Renvoie la longueur de la branche reliant un noeud a son pere. Comme dans la methode d'origine, elle peut etre
+     * negative.
+     *
+     * @param node noeud autre que la racine
+     * @return longueur de la branche
+     */
+    public double getLength(int node) {
+        return this.lengths[node];
+    }
+
+    /**
+     * Renvoie le nombre de valeurs de Q calculees pendant la construction, a comparer aux m (m - 1) / 2 paires de
+     * chaque etape d'une recherche exhaustive.
+     *
+     * @return nombre de Q calcules
+     */
+    public long getEvaluationCount() {
+        return this.nbEvaluations;
+    }
+
+    /**
+     * Renvoie l'arbre au format Newick, avec la longueur des branches.
+     *
+     * @return String au format Newick
+     */
+    public String getNewick() {
+        return new NewickWriter(true).toString(this);
+    }
+
+    public static void main(String[] args) {
+        // Exemple de Saitou et Nei repris par Wikipedia : a et b sont joints en premier avec des branches 2 et 3.
+        ArrayList<Sequence> letters = new ArrayList<>();
+        for (String s : new String[]{"a", "b", "c", "d", "e"}) {
+            letters.add(new Sequence(s));
+        }
+        double[][] d = {{0, 5, 9, 9, 8}, {5, 0, 10, 10, 9}, {9, 10, 0, 8, 7}, {9, 10, 8, 0, 3}, {8, 9, 7, 3, 0}};
+        DistanceMatrix matrix = new DistanceMatrix(letters.size());
+        for (int i = 0; i < d.length; i++) {
+            for (int j = i + 1; j < d.length; j++) {
+                matrix.set(i, j, d[i][j]);
+            }
+        }
+        System.out.println("Newick : " + NeighborJoining.build(letters, matrix).getNewick());
+
+        // Sequences aleatoires evoluant le long d'un arbre, pour mesurer l'elagage de la recherche.
+        Random random = new Random(42);
+        ArrayList<Sequence> sequences = new ArrayList<>();
+        sequences.add(new Sequence(randomBases(random, 200)));
+        while (sequences.size() < 3000) {
+            String parent = sequences.get(random.nextInt(sequences.size())).getSeq();
+            StringBuilder child = new StringBuilder(parent);
+            for (int i = 0; i < 5; i++) {
+                child.setCharAt(random.nextInt(child.length()), "ACGT".charAt(random.nextInt(4)));
+            }
+            sequences.add(new Sequence(child.toString()));
+        }
+        DistanceMatrix dist = new DistanceMatrixBuilder().build(sequences);
+        double t = System.nanoTime();
+        NeighborJoining tree = NeighborJoining.build(sequences, dist);
+        double t2 = System.nanoTime();
+        long exhaustive = 0;
+        for (long m = sequences.size(); m > 2; m--) {
+            exhaustive += m * (m - 1) / 2;
+        }
+        System.out.println("Neighbor-joining de " + sequences.size() + " sequences : " + (t2 - t) / 1e6 + " ms, "
+                + tree.getEvaluationCount() + " Q calcules sur " + exhaustive);
+    }
+
+    /**
+     * Tire une sequence aleatoire.
+     *
+     * @param random generateur
+     * @param length longueur
+     * @return sequence de A, C, G et T
+     */
+    private static String randomBases(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append("ACGT".charAt(random.nextInt(4)));
+        }
+        return sb.toString();
+    }
+}
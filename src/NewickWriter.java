@@ -0,0 +1,507 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Ecrit un arbre au format Newick directement dans un Appendable (StringBuilder, Writer...) ou un OutputStream, au
+ * lieu de construire une string par sous arbre. Le parcours est iteratif, avec une pile explicite, et chaque caractere
+ * n'est ecrit qu'une fois : le temps d'ecriture est lineaire en la taille du Newick. La sortie est identique a celle
+ * de getNewick() et getNewickAligned(), avec en option la longueur des branches, egale a la difference des hauteurs
+ * de fusion du pere et du fils.
+ */
+public class NewickWriter {
+
+    private boolean branchLengths;
+
+    /**
+     * Construit un writer sans longueurs de branches.
+     */
+    public NewickWriter() {
+        this(false);
+    }
+
+    /**
+     * Construit un writer.
+     *
+     * @param branchLengths vrai pour ecrire la longueur des branches dont les deux hauteurs de fusion sont connues
+     */
+    public NewickWriter(boolean branchLengths) {
+        this.branchLengths = branchLengths;
+    }
+
+    /**
+     * Renvoie l'arbre au format Newick sous forme de string.
+     *
+     * @param cluster racine de l'arbre
+     * @return String au format Newick
+     */
+    public String toString(ClusterOfSequences cluster) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            this.write(cluster, sb);
+        } catch (IOException e) {
+            // Un StringBuilder ne leve pas d'IOException.
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Renvoie l'arbre au format Newick sous forme de string.
+     *
+     * @param cluster racine de l'arbre
+     * @return String au format Newick
+     */
+    public String toString(ClusterOfSequencesBis cluster) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            this.write(cluster, sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Renvoie le dendrogramme au format Newick sous forme de string.
+     *
+     * @param dendrogram dendrogramme
+     * @return String au format Newick
+     */
+    public String toString(Dendrogram dendrogram) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            this.write(dendrogram, sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Renvoie l'arbre neighbor-joining au format Newick sous forme de string.
+     *
+     * @param tree arbre
+     * @return String au format Newick
+     */
+    public String toString(NeighborJoining tree) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            this.write(tree, sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Ecrit l'arbre au format Newick dans un flux d'octets, en UTF-8, a travers un tampon. Le flux est vide mais pas
+     * ferme. La methode ne s'appelle pas write() : un PrintStream, a la fois OutputStream et Appendable, rendrait
+     * l'appel ambigu.
+     *
+     * @param cluster racine de l'arbre
+     * @param out     flux de sortie
+     * @throws IOException Si l'ecriture echoue.
+     */
+    public void writeTo(ClusterOfSequences cluster, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        this.write(cluster, writer);
+        writer.flush();
+    }
+
+    /**
+     * Ecrit l'arbre au format Newick, point-virgule final compris.
+     *
+     * @param cluster racine de l'arbre
+     * @param out     sortie
+     * @throws IOException Si l'ecriture echoue.
+     */
+    public void write(ClusterOfSequences cluster, Appendable out) throws IOException {
+        // Pile des noeuds en cours de parcours et, pour chacun, indice du prochain sous cluster a ecrire.
+        ArrayList<ClusterOfSequences> nodes = new ArrayList<>();
+        int[] next = new int[16];
+        nodes.add(cluster);
+
+        while (!nodes.isEmpty()) {
+            int top = nodes.size() - 1;
+            ClusterOfSequences node = nodes.get(top);
+            ArrayList<ClusterOfSequences> subClusters = node.getSubClusters();
+
+            if (subClusters.isEmpty()) {
+                List<Sequence> elements = node.getElements();
+                if (elements.size() == 1) {
+                    out.append(elements.get(0).getSeq());
+                } else {
+                    // Cluster non clusterise : on affiche les sequences presentes.
+                    out.append('(');
+                    for (int i = 0; i < elements.size(); i++) {
+                        out.append(elements.get(i).getSeq());
+                        if (i < elements.size() - 1) {
+                            out.append(',');
+                        }
+                    }
+                    out.append(')');
+                }
+                nodes.remove(top);
+                continue;
+            }
+
+            int i = next[top];
+            if (i == 0) {
+                out.append('(');
+            } else {
+                ClusterOfSequences child = subClusters.get(i - 1);
+                this.appendLength(out, node.getHeight(), child.getHeight());
+                if (i == 1 && !child.getElements().isEmpty()) {
+                    out.append(',');
+                }
+            }
+
+            if (i < subClusters.size()) {
+                next[top] = i + 1;
+                if (nodes.size() == next.length) {
+                    next = Arrays.copyOf(next, 2 * next.length);
+                }
+                next[nodes.size()] = 0;
+                nodes.add(subClusters.get(i));
+            } else {
+                out.append(')');
+                nodes.remove(top);
+            }
+        }
+        out.append(';');
+    }
+
+    /**
+     * Ecrit l'arbre au format Newick avec toutes les feuilles alignees a droite, comme getNewickAligned(). Les
+     * longueurs de branches ne sont pas ecrites, l'echelle etant donnee par les parentheses.
+     *
+     * @param cluster racine de l'arbre
+     * @param out     sortie
+     * @throws IOException Si l'ecriture echoue.
+     */
+    public void writeAligned(ClusterOfSequences cluster, Appendable out) throws IOException {
+        int maxDepth = depth(cluster);
+        ArrayList<ClusterOfSequences> nodes = new ArrayList<>();
+        int[] next = new int[16];
+        nodes.add(cluster);
+
+        while (!nodes.isEmpty()) {
+            int top = nodes.size() - 1;
+            ClusterOfSequences node = nodes.get(top);
+            ArrayList<ClusterOfSequences> subClusters = node.getSubClusters();
+            List<Sequence> elements = node.getElements();
+
+            if (subClusters.isEmpty()) {
+                repeat(out, '(', maxDepth - top);
+                for (int i = 0; i < elements.size(); i++) {
+                    out.append(elements.get(i).getSeq());
+                    if (i < elements.size() - 1) {
+                        out.append(',');
+                    }
+                }
+                repeat(out, ')', maxDepth - top);
+                nodes.remove(top);
+                continue;
+            }
+
+            int i = next[top];
+            if (i == 0) {
+                out.append('(');
+                if (elements.size() == 1) {
+                    repeat(out, '(', maxDepth - 1 - top);
+                    out.append(elements.get(0).getSeq());
+                    repeat(out, ')', maxDepth - 1 - top);
+                    out.append(',');
+                }
+            } else if (i < subClusters.size()) {
+                out.append(',');
+            }
+
+            if (i < subClusters.size()) {
+                next[top] = i + 1;
+                if (nodes.size() == next.length) {
+                    next = Arrays.copyOf(next, 2 * next.length);
+                }
+                next[nodes.size()] = 0;
+                nodes.add(subClusters.get(i));
+            } else {
+                out.append(')');
+                nodes.remove(top);
+            }
+        }
+        out.append(';');
+    }
+
+    /**
+     * Renvoie l'arbre aligne au format Newick sous forme de string.
+     *
+     * @param cluster racine de l'arbre
+     * @return String au format Newick
+     */
+    public String toStringAligned(ClusterOfSequences cluster) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            this.writeAligned(cluster, sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Ecrit l'arbre au format Newick, point-virgule final compris.
+     *
+     * @param cluster racine de l'arbre
+     * @param out     sortie
+     * @throws IOException Si l'ecriture echoue.
+     */
+    public void write(ClusterOfSequencesBis cluster, Appendable out) throws IOException {
+        ArrayList<ClusterOfSequencesBis> nodes = new ArrayList<>();
+        int[] next = new int[16];
+        nodes.add(cluster);
+
+        while (!nodes.isEmpty()) {
+            int top = nodes.size() - 1;
+            ClusterOfSequencesBis node = nodes.get(top);
+            ArrayList<ClusterOfSequencesBis> subClusters = node.getSubClusters();
+
+            if (subClusters.isEmpty()) {
+                if (node.getElement() != null) {
+                    out.append(node.getElement().getSeq());
+                }
+                nodes.remove(top);
+                continue;
+            }
+
+            int i = next[top];
+            if (i == 0) {
+                out.append('(');
+            } else {
+                this.appendLength(out, node.getHeight(), subClusters.get(i - 1).getHeight());
+                if (i == 1) {
+                    out.append(',');
+                }
+            }
+
+            if (i < subClusters.size()) {
+                next[top] = i + 1;
+                if (nodes.size() == next.length) {
+                    next = Arrays.copyOf(next, 2 * next.length);
+                }
+                next[nodes.size()] = 0;
+                nodes.add(subClusters.get(i));
+            } else {
+                out.append(')');
+                nodes.remove(top);
+            }
+        }
+        out.append(';');
+    }
+
+    /**
+     * Ecrit un dendrogramme au format Newick, point-virgule final compris. S'il reste plusieurs racines, elles sont
+     * regroupees entre parentheses, sans longueurs de branches.
+     *
+     * @param dendrogram dendrogramme
+     * @param out        sortie
+     * @throws IOException Si l'ecriture echoue.
+     */
+    public void write(Dendrogram dendrogram, Appendable out) throws IOException {
+        int[] roots = dendrogram.getRoots();
+        if (roots.length != 1) {
+            out.append('(');
+        }
+        // Pile des noeuds en cours de parcours et, pour chacun, nombre de fils deja ecrits.
+        int[] nodes = new int[16];
+        int[] states = new int[16];
+
+        for (int r = 0; r < roots.length; r++) {
+            if (r > 0) {
+                out.append(',');
+            }
+            int top = 0;
+            nodes[top] = roots[r];
+            states[top++] = 0;
+
+            while (top > 0) {
+                int node = nodes[top - 1];
+                if (dendrogram.isLeaf(node)) {
+                    out.append(dendrogram.getLeaf(node).getSeq());
+                    top--;
+                    continue;
+                }
+
+                int state = states[top - 1];
+                if (state == 0) {
+                    out.append('(');
+                } else {
+                    int child = state == 1 ? dendrogram.getLeft(node) : dendrogram.getRight(node);
+                    this.appendLength(out, dendrogram.getHeight(node), dendrogram.getHeight(child));
+                    if (state == 1) {
+                        out.append(',');
+                    }
+                }
+
+                if (state < 2) {
+                    states[top - 1] = state + 1;
+                    if (top == nodes.length) {
+                        nodes = Arrays.copyOf(nodes, 2 * top);
+                        states = Arrays.copyOf(states, 2 * top);
+                    }
+                    nodes[top] = state == 0 ? dendrogram.getLeft(node) : dendrogram.getRight(node);
+                    states[top++] = 0;
+                } else {
+                    out.append(')');
+                    top--;
+                }
+            }
+        }
+
+        if (roots.length != 1) {
+            out.append(')');
+        }
+        out.append(';');
+    }
+
+    /**
+     * Ecrit un arbre neighbor-joining au format Newick, point-virgule final compris. Les longueurs de branches, si
+     * elles sont demandees, sont celles calculees par le neighbor-joining.
+     *
+     * @param tree arbre
+     * @param out  sortie
+     * @throws IOException Si l'ecriture echoue.
+     */
+    public void write(NeighborJoining tree, Appendable out) throws IOException {
+        // Pile des noeuds en cours de parcours et, pour chacun, nombre de fils deja ecrits.
+        int[] nodes = new int[16];
+        int[] states = new int[16];
+        int top = 0;
+        if (tree.getRoot() >= 0) {
+            nodes[top] = tree.getRoot();
+            states[top++] = 0;
+        }
+
+        while (top > 0) {
+            int node = nodes[top - 1];
+            if (tree.isLeaf(node)) {
+                out.append(tree.getLeaf(node).getSeq());
+                top--;
+                continue;
+            }
+
+            int state = states[top - 1];
+            if (state == 0) {
+                out.append('(');
+            } else {
+                int child = state == 1 ? tree.getLeft(node) : tree.getRight(node);
+                if (this.branchLengths) {
+                    out.append(':').append(Double.toString(tree.getLength(child)));
+                }
+                if (state == 1) {
+                    out.append(',');
+                }
+            }
+
+            if (state < 2) {
+                states[top - 1] = state + 1;
+                if (top == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, 2 * top);
+                    states = Arrays.copyOf(states, 2 * top);
+                }
+                nodes[top] = state == 0 ? tree.getLeft(node) : tree.getRight(node);
+                states[top++] = 0;
+            } else {
+                out.append(')');
+                top--;
+            }
+        }
+        out.append(';');
+    }
+
+    /**
+     * Ecrit la longueur d'une branche si elle est demandee et si les deux hauteurs sont connues.
+     *
+     * @param out          sortie
+     * @param parentHeight hauteur de fusion du pere
+     * @param childHeight  hauteur de fusion du fils
+     * @throws IOException Si l'ecriture echoue.
+     */
+    private void appendLength(Appendable out, double parentHeight, double childHeight) throws IOException {
+        if (this.branchLengths && !Double.isNaN(parentHeight) && !Double.isNaN(childHeight)) {
+            out.append(':').append(Double.toString(Math.max(0, parentHeight - childHeight)));
+        }
+    }
+
+    /**
+     * Calcule la profondeur d'un arbre comme getDepth() : une feuille est de profondeur 1.
+     *
+     * @param cluster racine de l'arbre
+     * @return profondeur de l'arbre
+     */
+    static int depth(ClusterOfSequences cluster) {
+        ArrayList<ClusterOfSequences> nodes = new ArrayList<>();
+        int[] depths = new int[16];
+        int maxDepth = 0;
+        nodes.add(cluster);
+        depths[0] = 1;
+
+        while (!nodes.isEmpty()) {
+            int top = nodes.size() - 1;
+            ClusterOfSequences node = nodes.remove(top);
+            int d = depths[top];
+            maxDepth = Math.max(maxDepth, d);
+            for (ClusterOfSequences child : node.getSubClusters()) {
+                if (nodes.size() == depths.length) {
+                    depths = Arrays.copyOf(depths, 2 * depths.length);
+                }
+                depths[nodes.size()] = d + 1;
+                nodes.add(child);
+            }
+        }
+        return maxDepth;
+    }
+
+    /**
+     * Ecrit count fois le caractere c.
+     *
+     * @param out   sortie
+     * @param c     caractere
+     * @param count nombre de repetitions, rien n'est ecrit s'il est negatif
+     * @throws IOException Si l'ecriture echoue.
+     */
+    private static void repeat(Appendable out, char c, int count) throws IOException {
+        for (int k = 0; k < count; k++) {
+            out.append(c);
+        }
+    }
+
+    public static void main(String[] args) {
+        ArrayList<Sequence> listSeq = new ArrayList<>();
+        listSeq.add(new Sequence("ATTACG"));
+        listSeq.add(new Sequence("ATATCG"));
+        listSeq.add(new Sequence("ACCCCG"));
+        listSeq.add(new Sequence("GCCGAG"));
+        listSeq.add(new Sequence("TCCCCG"));
+
+        ClusterOfSequences cluster = new ClusterOfSequences(listSeq);
+        cluster.clusterizeMatrix();
+        System.out.println("Newick : " + new NewickWriter().toString(cluster));
+        System.out.println("Newick avec longueurs de branches : " + new NewickWriter(true).toString(cluster));
+        System.out.println("Newick aligne : " + new NewickWriter().toStringAligned(cluster));
+        try {
+            System.out.print("Newick ecrit dans System.out : ");
+            new NewickWriter(true).writeTo(cluster, System.out);
+            System.out.println();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
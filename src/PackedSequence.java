@@ -0,0 +1,227 @@
+import java.util.Arrays;
+
+/**
+ * Sequence nucleotidique compactee sur 2 bits par base dans un tableau de long (32 bases par mot). Les minuscules
+ * a, c, g et t (regions masquees des fichiers FASTA) sont compactees comme les majuscules, leur casse etant notee dans
+ * un second masque. Les autres caracteres (N, codes d'ambiguite...) sont signales dans un masque separe, et conserves
+ * a part pour pouvoir etre compares et restitues. Chaque masque n'est alloue que s'il y a des bases de ce type.
+ */
+public class PackedSequence extends Sequence {
+
+	private static final long LOW_BITS = 0x5555555555555555L;
+	private static final byte[] CODES = new byte[128];
+	private static final char[] BASES = {'A', 'C', 'G', 'T'};
+
+	static {
+		for (int i = 0; i < CODES.length; i++) {
+			CODES[i] = -1;
+		}
+		CODES['A'] = 0;
+		CODES['C'] = 1;
+		CODES['G'] = 2;
+		CODES['T'] = 3;
+		CODES['a'] = 0;
+		CODES['c'] = 1;
+		CODES['g'] = 2;
+		CODES['t'] = 3;
+	}
+
+	private int length;
+	private long[] bits;
+	// Bit 2k du mot k / 32 a 1 si la base k n'est pas A, C, G ou T. Vaut null s'il n'y a aucune base de ce type.
+	private long[] mask;
+	// Bit 2k du mot k / 32 a 1 si la base k est a, c, g ou t. Vaut null s'il n'y a aucune minuscule de ce type.
+	private long[] lower;
+	// Positions croissantes des bases masquees et caracteres correspondants.
+	private int[] ambiguousPositions;
+	private char[] ambiguousChars;
+
+	/**
+	 * Constructeur d'apres une sequence sous forme de string.
+	 * @param s sequence
+	 */
+	public PackedSequence(CharSequence s) {
+		this.pack(s, null, s.length());
+	}
+
+	/**
+	 * Constructeur d'apres les length premiers octets d'un tableau (un octet par base, ISO-8859-1), sans passer par
+	 * une string. Le tableau n'est pas conserve.
+	 * @param residues bases de la sequence
+	 * @param length nombre de bases
+	 */
+	public PackedSequence(byte[] residues, int length) {
+		this.pack(null, residues, length);
+	}
+
+	/**
+	 * Compacte la sequence, donnee soit sous forme de CharSequence, soit sous forme d'octets.
+	 * @param s sequence, ou null
+	 * @param residues octets de la sequence si s vaut null
+	 * @param length nombre de bases
+	 */
+	private void pack(CharSequence s, byte[] residues, int length) {
+		this.length = length;
+		this.bits = new long[(this.length + 31) >>> 5];
+
+		int nbAmbiguous = 0;
+		boolean hasLower = false;
+		for (int i = 0; i < this.length; i++) {
+			char c = s != null ? s.charAt(i) : (char) (residues[i] & 0xFF);
+			if (c >= 128 || CODES[c] < 0) {
+				nbAmbiguous++;
+			} else if (c >= 'a') {
+				hasLower = true;
+			}
+		}
+		if (hasLower) {
+			this.lower = new long[this.bits.length];
+		}
+		if (nbAmbiguous > 0) {
+			this.mask = new long[this.bits.length];
+			this.ambiguousPositions = new int[nbAmbiguous];
+			this.ambiguousChars = new char[nbAmbiguous];
+		}
+
+		int k = 0;
+		for (int i = 0; i < this.length; i++) {
+			char c = s != null ? s.charAt(i) : (char) (residues[i] & 0xFF);
+			int shift = (i & 31) << 1;
+			if (c >= 128 || CODES[c] < 0) {
+				this.mask[i >>> 5] |= 1L << shift;
+				this.ambiguousPositions[k] = i;
+				this.ambiguousChars[k] = c;
+				k++;
+			} else {
+				this.bits[i >>> 5] |= (long) CODES[c] << shift;
+				if (c >= 'a') {
+					this.lower[i >>> 5] |= 1L << shift;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Constructeur d'apres une autre instance de Sequence.
+	 * @param s Sequence
+	 */
+	public PackedSequence(Sequence s) {
+		this(s.getSeq());
+	}
+
+	/**
+	 * Renvoie le nombre de bases de la sequence.
+	 * @return longueur de la sequence
+	 */
+	public int length() {
+		return this.length;
+	}
+
+	/**
+	 * Renvoie le caractere a la position i.
+	 * @param i position
+	 * @return base a la position i
+	 */
+	public char charAt(int i) {
+		int shift = (i & 31) << 1;
+		if (this.mask != null && ((this.mask[i >>> 5] >>> shift) & 1L) != 0) {
+			return this.ambiguousChars[Arrays.binarySearch(this.ambiguousPositions, i)];
+		}
+		char base = BASES[(int) (this.bits[i >>> 5] >>> shift) & 3];
+		if (this.lower != null && ((this.lower[i >>> 5] >>> shift) & 1L) != 0) {
+			return Character.toLowerCase(base);
+		}
+		return base;
+	}
+
+	/**
+	 * Decompacte la sequence sous forme de string. La string n'est pas conservee.
+	 * @return sequence
+	 */
+	@Override
+	public String getSeq() {
+		StringBuilder sb = new StringBuilder(this.length);
+		for (int i = 0; i < this.length; i++) {
+			sb.append(this.charAt(i));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Retourne la sequence sous forme de string.
+	 * @return seq
+	 */
+	@Override
+	public String toString() {
+		return this.getSeq();
+	}
+
+	/**
+	 * Calcule la meme distance que Sequence.distance(). Si l'autre sequence est aussi compactee, on compare 32 bases
+	 * a la fois : le XOR des deux mots est non nul sur les bases differentes, auxquelles on ajoute celles dont la casse
+	 * differe, et on les compte avec Long.bitCount.
+	 * @param otherSeq Sequence avec laquelle on calcule la distance.
+	 * @return double correspondant a la distance entre les sequences.
+	 */
+	@Override
+	public double distance(Sequence otherSeq) {
+		if (!(otherSeq instanceof PackedSequence)) {
+			return super.distance(otherSeq);
+		}
+		PackedSequence other = (PackedSequence) otherSeq;
+
+		int length = Math.min(this.length, other.length);
+		int sum = 0;
+		int nbWords = (length + 31) >>> 5;
+
+		for (int w = 0; w < nbWords; w++) {
+			long x = this.bits[w] ^ other.bits[w];
+			// On replie les 2 bits de chaque base sur le bit de poids faible.
+			x = (x | (x >>> 1)) & LOW_BITS;
+			// Comme dans Sequence.distance(), une minuscule differe de la meme base en majuscule.
+			if (this.lower != null || other.lower != null) {
+				x |= (this.lower == null ? 0 : this.lower[w]) ^ (other.lower == null ? 0 : other.lower[w]);
+			}
+
+			long tail = -1L;
+			if (w == nbWords - 1 && (length & 31) != 0) {
+				tail = (1L << ((length & 31) << 1)) - 1;
+				x &= tail;
+			}
+
+			long m1 = this.mask == null ? 0 : this.mask[w] & tail;
+			long m2 = other.mask == null ? 0 : other.mask[w] & tail;
+			if ((m1 | m2) != 0) {
+				x &= ~(m1 | m2);
+				// Une base masquee face a A, C, G ou T est toujours differente.
+				sum += Long.bitCount(m1 ^ m2);
+				long both = m1 & m2;
+				while (both != 0) {
+					int i = (w << 5) + (Long.numberOfTrailingZeros(both) >>> 1);
+					if (this.charAt(i) != other.charAt(i)) {
+						sum++;
+					}
+					both &= both - 1;
+				}
+			}
+			sum += Long.bitCount(x);
+		}
+
+		sum += Math.abs(this.length - other.length);
+
+		double a = (double)sum/(double)length;
+		return a;
+	}
+
+	public static void main(String[] args) {
+		String[] seqs = {"ATTACG", "ATATCG", "ACCCCG", "GGGGAA", "TTTACGNNACGTRYACGTACGTACGTACGTACGTACGTA", "TTTACGNAACGTRRACGTACGTACGTACGTACGTACGTT", "ttTACGnnacgtRYACGTACGTACGTacgtacgtacgTA", "acgtacgt"};
+
+		for (String s1 : seqs) {
+			for (String s2 : seqs) {
+				double packed = new PackedSequence(s1).distance(new PackedSequence(s2));
+				double string = new Sequence(s1).distance(new Sequence(s2));
+				System.out.println("dist(" + s1 + "," + s2 + "): " + packed + (packed == string ? "" : " != " + string));
+			}
+		}
+	}
+}
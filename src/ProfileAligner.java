@@ -0,0 +1,55 @@
+/**
+ * Aligne une sequence requete, preparee une seule fois sous forme de profil, contre des sequences cibles avec une
+ * matrice de substitution et une penalite d'indel lineaire. Le score peut etre global (Needleman-Wunsch, identique a
+ * AlignmentMW.getAlignmentScore()) ou local (Smith-Waterman).
+ */
+public interface ProfileAligner {
+
+    /**
+     * Cree un aligneur pour la requete : la version vectorielle VectorProfileAligner si le module jdk.incubator.vector
+     * est present, la version scalaire sinon.
+     *
+     * @param query   sequence requete
+     * @param scoring matrice de substitution
+     * @return aligneur
+     */
+    static ProfileAligner create(Sequence query, ScoringMatrix scoring) {
+        byte[] codes = scoring.encode(query.getSeq());
+        try {
+            ProfileAligner aligner = (ProfileAligner) Class.forName("VectorProfileAligner")
+                    .getDeclaredConstructor(byte[].class, ScoringMatrix.class).newInstance(codes, scoring);
+            // On aligne une premiere fois pour que l'absence du module se manifeste ici.
+            aligner.score(new byte[1], true);
+            return aligner;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new ScalarProfileAligner(codes, scoring);
+        }
+    }
+
+    /**
+     * Calcule le score de l'alignement de la requete avec la cible.
+     *
+     * @param target sequence cible
+     * @param local  vrai pour un alignement local, faux pour un alignement global
+     * @return score de l'alignement optimal
+     */
+    default int score(Sequence target, boolean local) {
+        return this.score(this.getScoring().encode(target.getSeq()), local);
+    }
+
+    /**
+     * Calcule le score de l'alignement de la requete avec une cible deja convertie par ScoringMatrix.encode().
+     *
+     * @param target indices des residus de la cible
+     * @param local  vrai pour un alignement local, faux pour un alignement global
+     * @return score de l'alignement optimal
+     */
+    int score(byte[] target, boolean local);
+
+    /**
+     * Renvoie la matrice de substitution de l'aligneur.
+     *
+     * @return matrice de substitution
+     */
+    ScoringMatrix getScoring();
+}
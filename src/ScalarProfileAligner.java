@@ -0,0 +1,97 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+
+/**
+ * Version scalaire de ProfileAligner : le profil contient, pour chaque residu de l'alphabet, les scores de ce residu
+ * face a chaque position de la requete, et la matrice est remplie colonne par colonne sur deux colonnes.
+ */
+public class ScalarProfileAligner implements ProfileAligner {
+
+    private ScoringMatrix scoring;
+    private int length;
+    private int[][] profile;
+
+    /**
+     * Construit le profil de la requete.
+     *
+     * @param query   indices des residus de la requete
+     * @param scoring matrice de substitution
+     */
+    public ScalarProfileAligner(byte[] query, ScoringMatrix scoring) {
+        this.scoring = scoring;
+        this.length = query.length;
+        this.profile = new int[scoring.size()][this.length];
+
+        int[] scores = scoring.getScores();
+        for (int r = 0; r < scoring.size(); r++) {
+            for (int i = 0; i < this.length; i++) {
+                this.profile[r][i] = scores[(query[i] & 0xFF) * scoring.size() + r];
+            }
+        }
+    }
+
+    @Override
+    public int score(byte[] target, boolean local) {
+        int gap = this.scoring.getGap();
+        int[] previous = new int[this.length + 1];
+        int[] current = new int[this.length + 1];
+        int best = 0;
+
+        if (!local) {
+            for (int i = 1; i <= this.length; i++) {
+                previous[i] = i * gap;
+            }
+        }
+
+        for (int j = 1; j <= target.length; j++) {
+            int[] column = this.profile[target[j - 1] & 0xFF];
+            current[0] = local ? 0 : j * gap;
+            for (int i = 1; i <= this.length; i++) {
+                int h = previous[i - 1] + column[i - 1];
+                h = Math.max(h, previous[i] + gap);
+                h = Math.max(h, current[i - 1] + gap);
+                if (local) {
+                    h = Math.max(h, 0);
+                    best = Math.max(best, h);
+                }
+                current[i] = h;
+            }
+            int[] tmp = previous;
+            previous = current;
+            current = tmp;
+        }
+        return local ? best : previous[this.length];
+    }
+
+    @Override
+    public ScoringMatrix getScoring() {
+        return this.scoring;
+    }
+
+    public static void main(String[] args) {
+        try {
+            ScoringMatrix blosum = ScoringMatrix.load(new File(System.getProperty("user.dir") + "/data/BLOSUM65"), -4);
+            Sequence human = new Sequence("MVLSPADKTNVKAAWGKVGAHAGEYGAEALERMFLSFPTTKTYFPHFDLSHGSAQVKGHGKKVADALTNAVAHVDDMPNALSALSDLHAHKLRVDPVNFKLLSHCLLVTLAAHLPAEFTPAVHASLDKFLASVSTVLTSKYR");
+            Sequence xenopus = new Sequence("MHLTADDKKHIKAIWPSVAAHGDKYGGEALHRMFMCAPKTKTYFPDFDFSEHSKHILAHGKKVSDALNEACNHLDNIAGCLSKLSDLHAYDLRVDPGNFPLLAHQILVVVAIHFPKQFDPATHKALDKFLVSVSNVLTSKYR");
+
+            ProfileAligner best = ProfileAligner.create(human, blosum);
+            ProfileAligner scalar = new ScalarProfileAligner(blosum.encode(human.getSeq()), blosum);
+            System.out.println("Aligneur utilise : " + best.getClass().getSimpleName());
+
+            for (ProfileAligner aligner : new ProfileAligner[]{scalar, best}) {
+                double t = System.nanoTime();
+                int global = 0;
+                int local = 0;
+                for (int k = 0; k < 5000; k++) {
+                    global = aligner.score(xenopus, false);
+                    local = aligner.score(xenopus, true);
+                }
+                double t2 = System.nanoTime();
+                System.out.println(aligner.getClass().getSimpleName() + " : global " + global + ", local " + local
+                        + ", temps d'exécution : " + (t2 - t));
+            }
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+
+/**
+ * Matrice de substitution prete a etre utilisee dans la boucle interne d'un alignement : chaque residu est converti
+ * une fois pour toutes en indice par une table de 256 octets, et les scores sont ranges dans un tableau plat, le score
+ * des residus d'indices a et b etant scores[a * size + b]. La penalite d'indel est lineaire.
+ */
+public class ScoringMatrix {
+
+    private byte[] indices;
+    private int size;
+    private int[] scores;
+    private int gap;
+    private int maxScore;
+    private int minScore;
+
+    /**
+     * Construit une matrice d'apres son alphabet et ses scores. Les minuscules ont le meme indice que les majuscules,
+     * et les residus absents de l'alphabet prennent l'indice de X, de N ou de *, s'ils existent.
+     *
+     * @param alphabet residus de la matrice, dans l'ordre des lignes et des colonnes
+     * @param matrix   scores, matrix[a][b] etant le score de la substitution de alphabet[a] par alphabet[b]
+     * @param gap      score d'un indel
+     */
+    public ScoringMatrix(String alphabet, int[][] matrix, int gap) {
+        if (alphabet.length() > 256) {
+            throw new IllegalArgumentException("L'alphabet ne peut pas depasser 256 residus.");
+        }
+        this.size = alphabet.length();
+        this.gap = gap;
+        this.indices = new byte[256];
+        this.scores = new int[this.size * this.size];
+        this.maxScore = Integer.MIN_VALUE;
+        this.minScore = Integer.MAX_VALUE;
+
+        int unknown = 0;
+        for (char c : new char[]{'*', 'N', 'X'}) {
+            if (alphabet.indexOf(c) >= 0) {
+                unknown = alphabet.indexOf(c);
+            }
+        }
+        for (int b = 0; b < 256; b++) {
+            this.indices[b] = (byte) unknown;
+        }
+        for (int a = 0; a < this.size; a++) {
+            char c = alphabet.charAt(a);
+            this.indices[Character.toLowerCase(c) & 0xFF] = (byte) a;
+            this.indices[c & 0xFF] = (byte) a;
+        }
+
+        for (int a = 0; a < this.size; a++) {
+            for (int b = 0; b < this.size; b++) {
+                this.scores[a * this.size + b] = matrix[a][b];
+                this.maxScore = Math.max(this.maxScore, matrix[a][b]);
+                this.minScore = Math.min(this.minScore, matrix[a][b]);
+            }
+        }
+    }
+
+    /**
+     * Construit la matrice identite sur les 256 valeurs d'un octet : deux residus identiques valent match, deux
+     * residus differents valent mismatch.
+     *
+     * @param match    score de deux residus identiques
+     * @param mismatch score de deux residus differents
+     * @param gap      score d'un indel
+     * @return matrice de substitution
+     */
+    public static ScoringMatrix identity(int match, int mismatch, int gap) {
+        StringBuilder alphabet = new StringBuilder(256);
+        int[][] matrix = new int[256][256];
+
+        for (int a = 0; a < 256; a++) {
+            alphabet.append((char) a);
+            for (int b = 0; b < 256; b++) {
+                matrix[a][b] = a == b ? match : mismatch;
+            }
+        }
+
+        ScoringMatrix identity = new ScoringMatrix(alphabet.toString(), matrix, gap);
+        // Les minuscules restent distinctes des majuscules, comme dans Sequence.distance().
+        for (int b = 0; b < 256; b++) {
+            identity.indices[b] = (byte) b;
+        }
+        return identity;
+    }
+
+    /**
+     * Charge une matrice au format de NUC.4.4 ou de BLOSUM65 avec AlignmentMW(File).
+     *
+     * @param f   fichier contenant la matrice
+     * @param gap score d'un indel
+     * @return matrice de substitution
+     * @throws FileNotFoundException Si le fichier n'a pas ete trouve.
+     */
+    public static ScoringMatrix load(File f, int gap) throws FileNotFoundException {
+        return new AlignmentMW(f).getScoringMatrix(gap);
+    }
+
+    /**
+     * Convertit une sequence en tableau d'indices de la matrice. Les caracteres au dela de 255 sont tronques.
+     *
+     * @param s sequence
+     * @return indices des residus, a lire avec & 0xFF
+     */
+    public byte[] encode(String s) {
+        byte[] codes = new byte[s.length()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = this.indices[s.charAt(i) & 0xFF];
+        }
+        return codes;
+    }
+
+    /**
+     * Renvoie le score de la substitution du residu a par le residu b.
+     *
+     * @param a premier residu
+     * @param b deuxieme residu
+     * @return score
+     */
+    public int score(char a, char b) {
+        return this.scores[(this.indices[a & 0xFF] & 0xFF) * this.size + (this.indices[b & 0xFF] & 0xFF)];
+    }
+
+    /**
+     * Renvoie le tableau plat des scores, sans le copier.
+     *
+     * @return scores, celui des indices a et b etant en a * size() + b
+     */
+    public int[] getScores() {
+        return this.scores;
+    }
+
+    /**
+     * Renvoie le nombre de residus de l'alphabet.
+     *
+     * @return taille de l'alphabet
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Renvoie le score d'un indel.
+     *
+     * @return score d'un indel
+     */
+    public int getGap() {
+        return this.gap;
+    }
+
+    /**
+     * Renvoie le plus grand score de la matrice.
+     *
+     * @return score maximal
+     */
+    public int getMaxScore() {
+        return this.maxScore;
+    }
+
+    /**
+     * Renvoie le plus petit score de la matrice.
+     *
+     * @return score minimal
+     */
+    public int getMinScore() {
+        return this.minScore;
+    }
+
+    public static void main(String[] args) {
+        try {
+            ScoringMatrix blosum = ScoringMatrix.load(new File(System.getProperty("user.dir") + "/data/BLOSUM65"), -4);
+            ScoringMatrix nuc = ScoringMatrix.load(new File(System.getProperty("user.dir") + "/data/NUC.4.4"), -3);
+            System.out.println("BLOSUM65 (W, W) : " + blosum.score('W', 'W') + ", (L, I) : " + blosum.score('L', 'I'));
+            System.out.println("NUC.4.4 (A, A) : " + nuc.score('A', 'A') + ", (A, R) : " + nuc.score('A', 'R'));
+
+            Sequence human = new Sequence("MVLSPADKTNVKAAWGKVGAHAGEYGAEALERMFLSFPTTKTYFPHFDLSHGSAQVKGHGKKVADALTNAVAHVDDMPNALSALSDLHAHKLRVDPVNFKLLSHCLLVTLAAHLPAEFTPAVHASLDKFLASVSTVLTSKYR");
+            Sequence mouse = new Sequence("MVLSGEDKSNIKAAWGKIGGHGAEYGAEALERMFASFPTTKTYFPHFDVSHGSAQVKGHGKKVADALASAAGHLDDLPGALSALSDLHAHKLRVDPVNFKLLSHCLLVTLASHHPADFTPAVHASLDKFLASVSTVLTSKYR");
+            AlignmentMW alignment = new AlignmentMW(human, mouse, blosum);
+            System.out.println("Score BLOSUM65 : " + alignment.getAlignmentScore());
+            System.out.println("Distance BLOSUM65 : " + alignment.getAlignmentDistance());
+        } catch (FileNotFoundException e) {
+            e.printStackTrace();
+        }
+    }
+}
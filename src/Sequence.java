@@ -21,7 +21,7 @@ public class Sequence {
 	 * @param s Sequence
 	 */
 	public Sequence(Sequence s) {
-		this.seq = s.seq;
+		this.seq = s.getSeq();
 	}
 
 	/**
@@ -6,6 +6,8 @@ import java.util.LinkedList;
 public class SequenceLabeled extends Sequence {
 
     private String label;
+    // Sequence compacte (PackedSequence, ByteSequence...) portant les residus, ou null s'ils sont dans seq.
+    private Sequence storage;
 
     /**
      * Constructeur de base.
@@ -25,6 +27,24 @@ public class SequenceLabeled extends Sequence {
         this.seq = s;
     }
 
+    /**
+     * Construit une sequence etiquetee dont les residus restent stockes dans la sequence s, par exemple une
+     * PackedSequence ou une ByteSequence : getSeq() et distance() passent par s.
+     * @param s sequence portant les residus
+     * @param l label
+     */
+    public SequenceLabeled(Sequence s, String l) {
+        this.label = l;
+        if (s instanceof SequenceLabeled) {
+            this.seq = s.seq;
+            this.storage = ((SequenceLabeled) s).storage;
+        } else if (s.getClass() == Sequence.class) {
+            this.seq = s.seq;
+        } else {
+            this.storage = s;
+        }
+    }
+
     /**
      * Construit une sequence d'apres une autre SequenceLabeled s.
      * @param s SequenceLabeled
@@ -32,6 +52,7 @@ public class SequenceLabeled extends Sequence {
     public SequenceLabeled(SequenceLabeled s) {
         this.seq = s.seq;
         this.label = s.label;
+        this.storage = s.storage;
     }
 
     /**
@@ -58,7 +79,38 @@ public class SequenceLabeled extends Sequence {
      * @return sequence
      */
     public String getSequence() {
-        return this.seq;
+        return this.getSeq();
+    }
+
+    /**
+     * Get la sequence sous forme de string, decompactee si les residus sont stockes dans une autre Sequence.
+     * @return sequence
+     */
+    @Override
+    public String getSeq() {
+        return this.storage == null ? this.seq : this.storage.getSeq();
+    }
+
+    /**
+     * Renvoie la sequence portant les residus : la sequence compacte si elle existe, sinon une Sequence.
+     * @return sequence sans label
+     */
+    public Sequence getStorage() {
+        return this.storage == null ? new Sequence(this.seq) : this.storage;
+    }
+
+    /**
+     * Calcule la distance avec la sequence compacte lorsqu'il y en a une, pour profiter de son implementation.
+     * @param otherSeq Sequence avec laquelle on calcule la distance.
+     * @return double correspondant a la distance entre les sequences.
+     */
+    @Override
+    public double distance(Sequence otherSeq) {
+        Sequence other = otherSeq instanceof SequenceLabeled ? ((SequenceLabeled) otherSeq).storage : otherSeq;
+        if (this.storage == null || other == null) {
+            return super.distance(otherSeq);
+        }
+        return this.storage.distance(other);
     }
 
     public static void main(String[] args) {
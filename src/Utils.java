@@ -1,8 +1,10 @@
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
-import java.util.Scanner;
+import java.util.stream.IntStream;
 
 
 /**
@@ -13,9 +15,38 @@ import java.util.Scanner;
  */
 public class Utils {
 	
+	/**
+	 * Number of codons translated by each task of translateSixFrames().
+	 */
+	public static final int TRANSLATION_CHUNK = 1 << 16;
+
+	/**
+	 * Minimal number of nucleotides for translateSixFrames() to run in parallel.
+	 */
+	public static final int PARALLEL_TRANSLATION_THRESHOLD = 1 << 20;
+
+	private static final char[] BASES = {'A', 'C', 'G', 'T'};
+	// 2-bit code of each nucleotide (A=0, C=1, G=2, T=3, lowercase included), -1 for any other byte.
+	private static final byte[] BASE_CODES = new byte[256];
+	// Amino-acid of each codon, indexed by the 2-bit codes of its bases (16*b0 + 4*b1 + b2), '*' for stop codons.
+	private static final byte[] CODON_TABLE = new byte[64];
+
+	static {
+		Arrays.fill(BASE_CODES, (byte) -1);
+		for (int b = 0; b < 4; b++) {
+			BASE_CODES[BASES[b]] = (byte) b;
+			BASE_CODES[Character.toLowerCase(BASES[b])] = (byte) b;
+		}
+		for (int c = 0; c < 64; c++) {
+			String aa = codon2aa("" + BASES[c >> 4] + BASES[(c >> 2) & 3] + BASES[c & 3]);
+			CODON_TABLE[c] = (byte) (aa.isEmpty() ? '*' : aa.charAt(0));
+		}
+	}
 	
 	/**
 	 * Returns the first sequence from a fasta file.
+	 * The file is read with a FastaReader, which stops after the first record;
+	 * use FastaReader directly to read every record of a multi-fasta file.
 	 * 
 	 * Todo: check whether this sequence is coding(?)
 	 * 
@@ -25,25 +56,9 @@ public class Utils {
 	 * 
 	 */
 	public static String readFasta(File f) throws FileNotFoundException {
-		  Scanner scanner = new Scanner(f);
-		  String currentLine;
-		  String currentSeq = "";
-		  while (scanner.hasNextLine()) {
-			  currentLine = scanner.nextLine();
-			  if (currentLine.startsWith(">")) {
-				  currentSeq = "";
-			  }
-			  else if (currentLine.equals("")) {
-				  if (! currentSeq.equals("")) {
-					  break;
-				  }
-			  }
-			  else {
-				  currentSeq += currentLine;
-			  }
-		  }
-		  scanner.close();
-		  return currentSeq;		
+		try (FastaReader reader = new FastaReader(f)) {
+			return reader.hasNext() ? reader.next().getSeq() : "";
+		}
 	}
 
 	/**
@@ -147,18 +162,140 @@ public class Utils {
 	}
 	
 	/**
-	 * converts a sequence of DNA nucleotides into the corresponding sequence of amino-acids
+	 * converts a sequence of DNA nucleotides into the corresponding sequence of amino-acids.
+	 * Stop codons are skipped and codons containing other characters than A, C, G or T (in upper or lower case)
+	 * give "-1", as with codon2aa.
+	 * An incomplete trailing codon is ignored.
 	 * 
 	 * @param nuclSeq sequence of DNA nucleotides
 	 * @return sequence of amino-acids
 	 */
 	public static String nucleotidesToAminoAcids(String nuclSeq) {
-		String amino = "";
-		for(int i = 0; i < nuclSeq.length(); i+=3)
-		{
-			amino += codon2aa(nuclSeq.substring(i, i+3));
+		StringBuilder amino = new StringBuilder(nuclSeq.length() / 3);
+		for (int i = 0; i + 3 <= nuclSeq.length(); i += 3) {
+			int b0 = baseCode(nuclSeq.charAt(i));
+			int b1 = baseCode(nuclSeq.charAt(i + 1));
+			int b2 = baseCode(nuclSeq.charAt(i + 2));
+			if ((b0 | b1 | b2) < 0) {
+				amino.append("-1");
+			} else if (CODON_TABLE[(b0 << 4) | (b1 << 2) | b2] != '*') {
+				amino.append((char) CODON_TABLE[(b0 << 4) | (b1 << 2) | b2]);
+			}
 		}
-		return amino;
+		return amino.toString();
+	}
+
+	/**
+	 * 2-bit code of a nucleotide.
+	 * 
+	 * @param c nucleotide
+	 * @return 0 to 3 for A, C, G, T (in upper or lower case), -1 otherwise
+	 */
+	static int baseCode(char c) {
+		return c > 0xFF ? -1 : BASE_CODES[c];
+	}
+
+	/**
+	 * Number of complete codons of a reading frame.
+	 * 
+	 * @param length number of nucleotides
+	 * @param frame reading frame, 0 to 2 on the forward strand, 3 to 5 on the reverse complement
+	 * @return number of codons, i.e. of amino-acids of the translation
+	 */
+	public static int codonCount(int length, int frame) {
+		return Math.max(0, (length - frame % 3) / 3);
+	}
+
+	/**
+	 * Translates a reading frame of a sequence of nucleotides (one byte per nucleotide, e.g. ByteSequence.getBytes()).
+	 * Stop codons give '*' and codons containing other characters than A, C, G or T (in upper or lower case) give 'X'.
+	 * 
+	 * @param nucl sequence of nucleotides
+	 * @param frame reading frame: 0 to 2 start at nucleotide 0 to 2 of the forward strand, 3 to 5 at nucleotide 0 to 2
+	 * of the reverse complement
+	 * @return sequence of amino-acids, one byte per amino-acid
+	 */
+	public static byte[] translate(byte[] nucl, int frame) {
+		byte[] protein = new byte[codonCount(nucl.length, frame)];
+		translate(nucl, frame, 0, protein.length, protein, 0);
+		return protein;
+	}
+
+	/**
+	 * Translates a reading frame into a preallocated array.
+	 * 
+	 * @param nucl sequence of nucleotides
+	 * @param frame reading frame, see translate(byte[], int)
+	 * @param protein array receiving the amino-acids, of at least codonCount(nucl.length, frame) bytes
+	 * @return number of amino-acids written
+	 */
+	public static int translate(byte[] nucl, int frame, byte[] protein) {
+		return translate(nucl, frame, 0, codonCount(nucl.length, frame), protein, 0);
+	}
+
+	/**
+	 * Translates the codons fromCodon (included) to toCodon (excluded) of a reading frame.
+	 * The reverse frames are read backwards with complemented codes, without building the reverse complement.
+	 * 
+	 * @param nucl sequence of nucleotides
+	 * @param frame reading frame, see translate(byte[], int)
+	 * @param fromCodon first codon to translate
+	 * @param toCodon codon after the last one to translate
+	 * @param protein array receiving the amino-acids
+	 * @param offset index in protein of the first amino-acid
+	 * @return number of amino-acids written
+	 */
+	private static int translate(byte[] nucl, int frame, int fromCodon, int toCodon, byte[] protein, int offset) {
+		if (frame < 0 || frame > 5) {
+			throw new IllegalArgumentException("The reading frame must be between 0 and 5: " + frame);
+		}
+		int o = offset;
+		if (frame < 3) {
+			for (int i = frame + 3 * fromCodon, k = fromCodon; k < toCodon; k++, i += 3) {
+				int b0 = BASE_CODES[nucl[i] & 0xFF];
+				int b1 = BASE_CODES[nucl[i + 1] & 0xFF];
+				int b2 = BASE_CODES[nucl[i + 2] & 0xFF];
+				protein[o++] = (b0 | b1 | b2) < 0 ? (byte) 'X' : CODON_TABLE[(b0 << 4) | (b1 << 2) | b2];
+			}
+		} else {
+			for (int i = nucl.length - 1 - (frame - 3) - 3 * fromCodon, k = fromCodon; k < toCodon; k++, i -= 3) {
+				int b0 = BASE_CODES[nucl[i] & 0xFF];
+				int b1 = BASE_CODES[nucl[i - 1] & 0xFF];
+				int b2 = BASE_CODES[nucl[i - 2] & 0xFF];
+				protein[o++] = (b0 | b1 | b2) < 0 ? (byte) 'X' : CODON_TABLE[((3 - b0) << 4) | ((3 - b1) << 2) | (3 - b2)];
+			}
+		}
+		return o - offset;
+	}
+
+	/**
+	 * Translates the six reading frames of a sequence of nucleotides.
+	 * Above PARALLEL_TRANSLATION_THRESHOLD nucleotides, the frames are cut in chunks of TRANSLATION_CHUNK codons
+	 * translated in parallel, each chunk writing directly at its place in the result.
+	 * 
+	 * @param nucl sequence of nucleotides
+	 * @return the six translations, indexed by reading frame (see translate(byte[], int))
+	 */
+	public static byte[][] translateSixFrames(byte[] nucl) {
+		byte[][] frames = new byte[6][];
+		for (int f = 0; f < 6; f++) {
+			frames[f] = new byte[codonCount(nucl.length, f)];
+		}
+		int chunksPerFrame = Math.max(1, (frames[0].length + TRANSLATION_CHUNK - 1) / TRANSLATION_CHUNK);
+
+		IntStream tasks = IntStream.range(0, 6 * chunksPerFrame);
+		if (nucl.length >= PARALLEL_TRANSLATION_THRESHOLD) {
+			tasks = tasks.parallel();
+		}
+		tasks.forEach(t -> {
+			byte[] protein = frames[t / chunksPerFrame];
+			int from = (t % chunksPerFrame) * TRANSLATION_CHUNK;
+			int to = Math.min(from + TRANSLATION_CHUNK, protein.length);
+			if (from < to) {
+				translate(nucl, t / chunksPerFrame, from, to, protein, from);
+			}
+		});
+		return frames;
 	}
 	
 	public static void main(String[] args) {
@@ -215,6 +352,16 @@ public class Utils {
 			clusterHemoglobinProteins.clusterize();
 			System.out.println(clusterHemoglobinProteins.getNewick());
 			
+			/*
+			 * SIX FRAMES
+			 */
+			System.out.println();
+			System.out.println("Six-frame translation of " + dataNucleotides.get(0));
+			byte[][] frames = Utils.translateSixFrames(new ByteSequence(dataNucleotides.get(0)).getBytes());
+			for (int f = 0; f < frames.length; f++) {
+				System.out.println("frame " + f + ": " + new String(frames[f], StandardCharsets.ISO_8859_1));
+			}
+			
 		} catch (FileNotFoundException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
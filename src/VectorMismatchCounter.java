@@ -0,0 +1,33 @@
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Noyau vectoriel de MismatchCounter base sur l'API Vector (jdk.incubator.vector) : les sequences sont comparees par
+ * blocs de la largeur maximale des registres, et les differences sont comptees sur le masque de comparaison. Cette
+ * classe doit etre compilee et executee avec --add-modules jdk.incubator.vector ; MismatchCounter.best() se rabat sur
+ * la version scalaire sinon.
+ */
+public class VectorMismatchCounter implements MismatchCounter {
+
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    @Override
+    public int count(byte[] s1, byte[] s2, int length) {
+        int sum = 0;
+        int i = 0;
+        int upperBound = SPECIES.loopBound(length);
+
+        for (; i < upperBound; i += SPECIES.length()) {
+            ByteVector v1 = ByteVector.fromArray(SPECIES, s1, i);
+            ByteVector v2 = ByteVector.fromArray(SPECIES, s2, i);
+            sum += v1.compare(VectorOperators.NE, v2).trueCount();
+        }
+        for (; i < length; i++) {
+            if (s1[i] != s2[i]) {
+                sum++;
+            }
+        }
+        return sum;
+    }
+}
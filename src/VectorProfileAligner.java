@@ -0,0 +1,322 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Version vectorielle de ProfileAligner, selon la methode en bandes de Farrar (Striped Smith-Waterman). La requete de
+ * longueur m est decoupee en L segments de longueur S = ceil(m / L), L etant le nombre de voies d'un vecteur : la voie
+ * l du vecteur s contient la position l * S + s. Ainsi, les positions d'un meme vecteur ne dependent pas les unes des
+ * autres dans une colonne, et seules les dependances verticales entre segments sont corrigees a posteriori (boucle
+ * paresseuse sur F). Les calculs sont faits sur des voies de 16 bits, et refaits sur 32 bits si les scores risquent
+ * de deborder. Cette classe doit etre compilee et executee avec --add-modules jdk.incubator.vector.
+ */
+public class VectorProfileAligner implements ProfileAligner {
+
+    private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    // "Moins l'infini" sur 16 bits, assez loin de Short.MIN_VALUE pour pouvoir encore y ajouter un indel.
+    private static final short SHORT_MINUS_INFINITY = -20000;
+    private static final int SHORT_SAFE_RANGE = 10000;
+    private static final int CHECK_INTERVAL = 16;
+
+    private ScoringMatrix scoring;
+    private byte[] query;
+    private short[][] shortProfile;
+    private int[][] intProfile;
+
+    /**
+     * Construit le profil 16 bits de la requete ; le profil 32 bits n'est construit qu'en cas de debordement.
+     *
+     * @param query   indices des residus de la requete
+     * @param scoring matrice de substitution
+     */
+    public VectorProfileAligner(byte[] query, ScoringMatrix scoring) {
+        this.scoring = scoring;
+        this.query = query;
+
+        int lanes = SHORTS.length();
+        int segments = Math.max(1, (query.length + lanes - 1) / lanes);
+        int[] scores = scoring.getScores();
+        this.shortProfile = new short[scoring.size()][segments * lanes];
+        for (int r = 0; r < scoring.size(); r++) {
+            for (int s = 0; s < segments; s++) {
+                for (int l = 0; l < lanes; l++) {
+                    int i = l * segments + s;
+                    // Les positions au dela de la requete ne peuvent influencer aucune case reelle.
+                    this.shortProfile[r][s * lanes + l] = i < query.length
+                            ? (short) scores[(query[i] & 0xFF) * scoring.size() + r] : 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Construit le profil 32 bits de la requete.
+     */
+    private void buildIntProfile() {
+        int lanes = INTS.length();
+        int segments = Math.max(1, (this.query.length + lanes - 1) / lanes);
+        int[] scores = this.scoring.getScores();
+        this.intProfile = new int[this.scoring.size()][segments * lanes];
+        for (int r = 0; r < this.scoring.size(); r++) {
+            for (int s = 0; s < segments; s++) {
+                for (int l = 0; l < lanes; l++) {
+                    int i = l * segments + s;
+                    this.intProfile[r][s * lanes + l] = i < this.query.length
+                            ? scores[(this.query[i] & 0xFF) * this.scoring.size() + r] : 0;
+                }
+            }
+        }
+    }
+
+    @Override
+    public int score(byte[] target, boolean local) {
+        int gap = this.scoring.getGap();
+        if (this.query.length == 0 || target.length == 0) {
+            return local ? 0 : gap * (this.query.length + target.length);
+        }
+
+        int step = Math.max(Math.abs(gap), Math.max(this.scoring.getMaxScore(), -this.scoring.getMinScore()));
+        boolean fitsShort = local || (long) (this.query.length + target.length + 2) * step <= SHORT_SAFE_RANGE;
+        if (fitsShort && step * CHECK_INTERVAL < SHORT_SAFE_RANGE) {
+            int score = this.scoreShort(target, local);
+            if (score != Integer.MIN_VALUE) {
+                return score;
+            }
+        }
+
+        if (this.intProfile == null) {
+            this.buildIntProfile();
+        }
+        return this.scoreInt(target, local);
+    }
+
+    /**
+     * Alignement sur des voies de 16 bits.
+     *
+     * @param target indices des residus de la cible
+     * @param local  vrai pour un alignement local
+     * @return score, ou Integer.MIN_VALUE si un score local risque de deborder
+     */
+    private int scoreShort(byte[] target, boolean local) {
+        int lanes = SHORTS.length();
+        int segments = Math.max(1, (this.query.length + lanes - 1) / lanes);
+        short gap = (short) this.scoring.getGap();
+        ShortVector vOverflow = ShortVector.broadcast(SHORTS,
+                (short) (Short.MAX_VALUE - CHECK_INTERVAL * Math.max(1, this.scoring.getMaxScore())));
+        short[] shifted = new short[2 * lanes];
+        ShortVector vGap = ShortVector.broadcast(SHORTS, gap);
+        ShortVector vZero = ShortVector.zero(SHORTS);
+        ShortVector vMinusInfinity = ShortVector.broadcast(SHORTS, SHORT_MINUS_INFINITY);
+        ShortVector vMax = vZero;
+
+        short[] load = new short[segments * lanes];
+        short[] store = new short[segments * lanes];
+        // Colonne -1 : H(i, -1) = 0 en local, (i + 1) * gap en global.
+        if (!local) {
+            for (int s = 0; s < segments; s++) {
+                for (int l = 0; l < lanes; l++) {
+                    store[s * lanes + l] = (short) Math.max(SHORT_MINUS_INFINITY, (l * segments + s + 1) * gap);
+                }
+            }
+        }
+
+        for (int j = 0; j < target.length; j++) {
+            short[] profile = this.shortProfile[target[j] & 0xFF];
+
+            // Diagonale de la premiere ligne : H(-1, j - 1) = 0 en local, j * gap en global.
+            ShortVector vH = shift(store, (segments - 1) * lanes, local ? 0 : (short) (j * gap), shifted);
+            ShortVector vF = local ? vMinusInfinity : vMinusInfinity.withLane(0, (short) ((j + 2) * gap));
+            short[] tmp = load;
+            load = store;
+            store = tmp;
+
+            for (int s = 0; s < segments; s++) {
+                vH = vH.add(ShortVector.fromArray(SHORTS, profile, s * lanes));
+                ShortVector vLoad = ShortVector.fromArray(SHORTS, load, s * lanes);
+                vH = vH.max(vLoad.add(vGap)).max(vF);
+                if (local) {
+                    vH = vH.max(vZero);
+                    vMax = vMax.max(vH);
+                }
+                vH.intoArray(store, s * lanes);
+                vF = vH.add(vGap);
+                vH = vLoad;
+            }
+
+            // Boucle paresseuse : on propage F d'un segment au suivant tant qu'il ameliore une case.
+            vF = shift(vF, SHORT_MINUS_INFINITY, shifted);
+            int s = 0;
+            while (true) {
+                ShortVector vStore = ShortVector.fromArray(SHORTS, store, s * lanes);
+                if (!vF.compare(VectorOperators.GT, vStore).anyTrue()) {
+                    break;
+                }
+                vStore = vStore.max(vF);
+                vStore.intoArray(store, s * lanes);
+                vF = vStore.add(vGap);
+                if (++s == segments) {
+                    vF = shift(vF, SHORT_MINUS_INFINITY, shifted);
+                    s = 0;
+                }
+            }
+
+            // Un score augmente au plus du score maximal par colonne : on ne verifie le debordement que toutes les
+            // CHECK_INTERVAL colonnes, avec une marge suffisante.
+            if (local && (j % CHECK_INTERVAL == CHECK_INTERVAL - 1 || j == target.length - 1)
+                    && vMax.compare(VectorOperators.GT, vOverflow).anyTrue()) {
+                return Integer.MIN_VALUE;
+            }
+        }
+
+        if (local) {
+            return vMax.reduceLanes(VectorOperators.MAX);
+        }
+        int last = this.query.length - 1;
+        return store[(last % segments) * lanes + last / segments];
+    }
+
+    /**
+     * Alignement sur des voies de 32 bits, meme algorithme que scoreShort().
+     *
+     * @param target indices des residus de la cible
+     * @param local  vrai pour un alignement local
+     * @return score de l'alignement optimal
+     */
+    private int scoreInt(byte[] target, boolean local) {
+        int lanes = INTS.length();
+        int segments = Math.max(1, (this.query.length + lanes - 1) / lanes);
+        int gap = this.scoring.getGap();
+        int minusInfinity = Integer.MIN_VALUE / 2;
+        IntVector vGap = IntVector.broadcast(INTS, gap);
+        IntVector vZero = IntVector.zero(INTS);
+        IntVector vMinusInfinity = IntVector.broadcast(INTS, minusInfinity);
+        IntVector vMax = vZero;
+        int[] shifted = new int[2 * lanes];
+
+        int[] load = new int[segments * lanes];
+        int[] store = new int[segments * lanes];
+        if (!local) {
+            for (int s = 0; s < segments; s++) {
+                for (int l = 0; l < lanes; l++) {
+                    store[s * lanes + l] = (l * segments + s + 1) * gap;
+                }
+            }
+        }
+
+        for (int j = 0; j < target.length; j++) {
+            int[] profile = this.intProfile[target[j] & 0xFF];
+
+            IntVector vH = shift(store, (segments - 1) * lanes, local ? 0 : j * gap, shifted);
+            IntVector vF = local ? vMinusInfinity : vMinusInfinity.withLane(0, (j + 2) * gap);
+            int[] tmp = load;
+            load = store;
+            store = tmp;
+
+            for (int s = 0; s < segments; s++) {
+                vH = vH.add(IntVector.fromArray(INTS, profile, s * lanes));
+                IntVector vLoad = IntVector.fromArray(INTS, load, s * lanes);
+                vH = vH.max(vLoad.add(vGap)).max(vF);
+                if (local) {
+                    vH = vH.max(vZero);
+                    vMax = vMax.max(vH);
+                }
+                vH.intoArray(store, s * lanes);
+                vF = vH.add(vGap);
+                vH = vLoad;
+            }
+
+            vF = shift(vF, minusInfinity, shifted);
+            int s = 0;
+            while (true) {
+                IntVector vStore = IntVector.fromArray(INTS, store, s * lanes);
+                if (!vF.compare(VectorOperators.GT, vStore).anyTrue()) {
+                    break;
+                }
+                vStore = vStore.max(vF);
+                vStore.intoArray(store, s * lanes);
+                vF = vStore.add(vGap);
+                if (++s == segments) {
+                    vF = shift(vF, minusInfinity, shifted);
+                    s = 0;
+                }
+            }
+        }
+
+        if (local) {
+            return vMax.reduceLanes(VectorOperators.MAX);
+        }
+        int last = this.query.length - 1;
+        return store[(last % segments) * lanes + last / segments];
+    }
+
+    /**
+     * Decale d'un cran vers le haut les voies du vecteur range a l'indice offset de array : la voie l + 1 du resultat
+     * est la voie l du vecteur, et la voie 0 vaut first. Le decalage passe par le tableau de travail shifted, de
+     * taille 2 * L.
+     *
+     * @param array   tableau contenant le vecteur
+     * @param offset  indice du vecteur dans le tableau
+     * @param first   valeur de la voie 0
+     * @param shifted tableau de travail
+     * @return vecteur decale
+     */
+    private static ShortVector shift(short[] array, int offset, short first, short[] shifted) {
+        int lanes = SHORTS.length();
+        System.arraycopy(array, offset, shifted, lanes, lanes);
+        shifted[lanes - 1] = first;
+        return ShortVector.fromArray(SHORTS, shifted, lanes - 1);
+    }
+
+    /**
+     * Decale d'un cran vers le haut les voies d'un vecteur, la voie 0 valant first.
+     *
+     * @param vector  vecteur
+     * @param first   valeur de la voie 0
+     * @param shifted tableau de travail de taille 2 * L
+     * @return vecteur decale
+     */
+    private static ShortVector shift(ShortVector vector, short first, short[] shifted) {
+        int lanes = SHORTS.length();
+        vector.intoArray(shifted, lanes);
+        shifted[lanes - 1] = first;
+        return ShortVector.fromArray(SHORTS, shifted, lanes - 1);
+    }
+
+    /**
+     * Version 32 bits de shift(short[], int, short, short[]).
+     *
+     * @param array   tableau contenant le vecteur
+     * @param offset  indice du vecteur dans le tableau
+     * @param first   valeur de la voie 0
+     * @param shifted tableau de travail
+     * @return vecteur decale
+     */
+    private static IntVector shift(int[] array, int offset, int first, int[] shifted) {
+        int lanes = INTS.length();
+        System.arraycopy(array, offset, shifted, lanes, lanes);
+        shifted[lanes - 1] = first;
+        return IntVector.fromArray(INTS, shifted, lanes - 1);
+    }
+
+    /**
+     * Version 32 bits de shift(ShortVector, short, short[]).
+     *
+     * @param vector  vecteur
+     * @param first   valeur de la voie 0
+     * @param shifted tableau de travail de taille 2 * L
+     * @return vecteur decale
+     */
+    private static IntVector shift(IntVector vector, int first, int[] shifted) {
+        int lanes = INTS.length();
+        vector.intoArray(shifted, lanes);
+        shifted[lanes - 1] = first;
+        return IntVector.fromArray(INTS, shifted, lanes - 1);
+    }
+
+    @Override
+    public ScoringMatrix getScoring() {
+        return this.scoring;
+    }
+}